@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Ranks the students of a PiazzaExchange by their contributions. The students
+ * are kept in a treap ordered by contribution (highest first, then by PID)
+ * where every node knows the size of its subtree, so the top k students, the
+ * rank of a student and the students between two ranks are found in O(log n)
+ * plus the size of the answer. Ranks start at 1.
+ */
+public class ContributionRanking {
+
+    private class Node {
+        User user; // the student
+        int score; // the contribution of the student when it was last updated
+        int weight; // random heap priority of the treap
+        int size; // number of nodes in the subtree rooted here
+        Node left;
+        Node right;
+
+        Node(User user, int score) {
+            this.user = user;
+            this.score = score;
+            this.weight = random.nextInt();
+            this.size = 1;
+        }
+    }
+
+    private Node root; // root of the treap
+    private HashMap<User, Node> nodes; // student -> its node in the treap
+    private Random random; // source of the treap priorities
+
+    /**
+     * Constructor that initialize an empty ranking
+     */
+    public ContributionRanking() {
+        this.root = null;
+        this.nodes = new HashMap<>();
+        this.random = new Random();
+    }
+
+    /**
+     * Add the student to the ranking, or update it if it is already ranked
+     *
+     * @param u the student
+     * @param score the contribution of the student
+     */
+    public void add(User u, int score) {
+        if (this.update(u, score)) {
+            return;
+        }
+        Node node = new Node(u, score);
+        this.nodes.put(u, node);
+        this.root = this.insert(this.root, node);
+    }
+
+    /**
+     * Move the student to the place of its new contribution
+     *
+     * @param u the student whose contribution changed
+     * @param score the new contribution of the student
+     * @return whether the student is ranked
+     */
+    public boolean update(User u, int score) {
+        Node node = this.nodes.get(u);
+        if (node == null) {
+            return false;
+        }
+        if (node.score != score) {
+            this.root = this.delete(this.root, node);
+            node.score = score;
+            node.left = null;
+            node.right = null;
+            node.size = 1;
+            this.root = this.insert(this.root, node);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the student from the ranking
+     *
+     * @param u the student to remove
+     * @return whether the student was ranked
+     */
+    public boolean remove(User u) {
+        Node node = this.nodes.remove(u);
+        if (node == null) {
+            return false;
+        }
+        this.root = this.delete(this.root, node);
+        return true;
+    }
+
+    /**
+     * Get the rank of the student
+     *
+     * @param u the student
+     * @return the rank of the student, 1 for the highest contribution, or 0 if the student is not ranked
+     */
+    public int rank(User u) {
+        Node target = this.nodes.get(u);
+        if (target == null) {
+            return 0;
+        }
+        int rank = 1;
+        Node cur = this.root;
+        while (cur != target) {
+            if (before(target, cur)) {
+                cur = cur.left;
+            }
+            else {
+                rank += size(cur.left) + 1;
+                cur = cur.right;
+            }
+        }
+        return rank + size(cur.left);
+    }
+
+    /**
+     * Get the students ranked between a and b, both included
+     *
+     * @param a the first rank
+     * @param b the last rank
+     * @return the students in rank order, only the ranks that exist are included
+     */
+    public User[] between(int a, int b) {
+        a = Math.max(a, 1);
+        b = Math.min(b, this.size());
+        ArrayList<User> users = new ArrayList<>(Math.max(0, b - a + 1));
+        if (a <= b) {
+            this.collect(this.root, a, b, 0, users);
+        }
+        return users.toArray(new User[0]);
+    }
+
+    /**
+     * Get the k students with the highest contributions
+     *
+     * @param k the number of students
+     * @return the top students in rank order
+     */
+    public User[] top(int k) {
+        return this.between(1, k);
+    }
+
+    public int size() {
+        return size(this.root);
+    }
+
+    /**
+     * Add the users of the subtree whose rank is between a and b to the list, in order
+     *
+     * @param offset the number of nodes ranked before this subtree
+     */
+    private void collect(Node node, int a, int b, int offset, ArrayList<User> users) {
+        if (node == null) {
+            return;
+        }
+        int nodeRank = offset + size(node.left) + 1;
+        if (a < nodeRank) {
+            this.collect(node.left, a, b, offset, users);
+        }
+        if (a <= nodeRank && nodeRank <= b) {
+            users.add(node.user);
+        }
+        if (b > nodeRank) {
+            this.collect(node.right, a, b, nodeRank, users);
+        }
+    }
+
+    private Node insert(Node root, Node node) {
+        if (root == null) {
+            return node;
+        }
+        if (before(node, root)) {
+            root.left = this.insert(root.left, node);
+            if (root.left.weight > root.weight) {
+                root = rotateRight(root);
+            }
+        }
+        else {
+            root.right = this.insert(root.right, node);
+            if (root.right.weight > root.weight) {
+                root = rotateLeft(root);
+            }
+        }
+        update(root);
+        return root;
+    }
+
+    private Node delete(Node root, Node node) {
+        if (root == node) {
+            return merge(root.left, root.right);
+        }
+        if (before(node, root)) {
+            root.left = this.delete(root.left, node);
+        }
+        else {
+            root.right = this.delete(root.right, node);
+        }
+        update(root);
+        return root;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.weight > right.weight) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Whether node a is ranked before node b: higher contribution first, then by PID
+     */
+    private static boolean before(Node a, Node b) {
+        if (a.score != b.score) {
+            return a.score > b.score;
+        }
+        return a.user.PID.compareTo(b.user.PID) < 0;
+    }
+
+    private static void update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ranks the posts of a PiazzaExchange by their number of endorsements. Posts
+ * are grouped in buckets by endorsement count, and the buckets are kept in
+ * descending order so the top N posts are read off in O(N). Posts with the
+ * same count are ranked the most recently added first.
+ */
+public class EndorsementLeaderboard {
+
+    private TreeMap<Integer, TreeMap<Long, Post>> buckets; // endorsement count -> posts with that count, by the order they were added
+    private HashMap<Post, Integer> counts; // post -> the count it is ranked with
+    private HashMap<Post, Long> order; // post -> the order in which it was added
+    private long nextOrder; // order given to the next added post
+
+    /**
+     * Constructor that initialize an empty leaderboard
+     */
+    public EndorsementLeaderboard() {
+        this.buckets = new TreeMap<>();
+        this.counts = new HashMap<>();
+        this.order = new HashMap<>();
+        this.nextOrder = 0;
+    }
+
+    /**
+     * Add the post to the leaderboard, or update it if it is already in it
+     *
+     * @param p the post to add
+     */
+    public void add(Post p) {
+        if (!this.update(p)) {
+            int endorsements = p.getEndorsementCount();
+            this.counts.put(p, endorsements);
+            this.order.put(p, this.nextOrder);
+            this.bucket(endorsements).put(this.nextOrder++, p);
+        }
+    }
+
+    /**
+     * Move the post to the bucket of its current endorsement count
+     *
+     * @param p the post whose endorsement count changed
+     * @return whether the post is in the leaderboard
+     */
+    public boolean update(Post p) {
+        Integer count = this.counts.get(p);
+        if (count == null) {
+            return false;
+        }
+        int endorsements = p.getEndorsementCount(); // read once, endorsements may keep coming in
+        if (count != endorsements) {
+            this.removeFromBucket(p, count);
+            this.counts.put(p, endorsements);
+            this.bucket(endorsements).put(this.order.get(p), p);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the post from the leaderboard
+     *
+     * @param p the post to remove
+     * @return whether the post was found and removed
+     */
+    public boolean remove(Post p) {
+        Integer count = this.counts.remove(p);
+        if (count == null) {
+            return false;
+        }
+        this.removeFromBucket(p, count);
+        this.order.remove(p);
+        return true;
+    }
+
+    /**
+     * Get the n most endorsed posts, most endorsed first and the most recently
+     * added first for the same count, skipping tombstoned posts. If there are
+     * fewer than n posts, the rest of the array is left null.
+     *
+     * @param n the number of posts to get
+     * @return the n most endorsed posts
+     */
+    public Post[] top(int n) {
+        Post[] top = new Post[n];
+        int i = 0;
+        for (Map.Entry<Integer, TreeMap<Long, Post>> entry : this.buckets.descendingMap().entrySet()) {
+            for (Post p : entry.getValue().descendingMap().values()) {
+                if (i == n) {
+                    return top;
+                }
+                if (!p.tombstoned) {
+                    top[i++] = p;
+                }
+            }
+        }
+        return top;
+    }
+
+    public int size() {
+        return this.counts.size();
+    }
+
+    private TreeMap<Long, Post> bucket(int count) {
+        return this.buckets.computeIfAbsent(count, c -> new TreeMap<>());
+    }
+
+    private void removeFromBucket(Post p, int count) {
+        TreeMap<Long, Post> bucket = this.buckets.get(count);
+        bucket.remove(this.order.get(p));
+        if (bucket.isEmpty()) {
+            this.buckets.remove(count);
+        }
+    }
+}
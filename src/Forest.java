@@ -1,16 +1,37 @@
-import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
 
 public class Forest {
 
     // Connects the InternalNode with their specific keywords in the hashmap
-    private HashMap<String, InternalNode> forest;
+    private KeywordMap<InternalNode> forest;
+
+    // Every node ever created, indexed by the id of the node
+    private ArrayList<InternalNode> nodes;
+
+    // Compiled (CSR) form of the edges: the children of node i are the ids
+    // childIds[childStart[i]] .. childIds[childStart[i + 1] - 1]
+    private int[] childStart;
+    private int[] childIds;
+    private boolean graphChanged; // whether the edges changed since they were compiled
+
+    // Buffers reused by every search, so the searches are synchronized
+    private int[] frontier; // ids of the nodes to visit, level by level
+    private int[] visitStamp; // visitStamp[i] == stamp when node i was visited by the current search
+    private int stamp;
+
+    private SimilarPostsCache cache; // results of the recent searches
+    private KeywordTrie keywordTrie; // the keys of the forest, for suggesting keywords
+    private KeywordBKTree keywordBKTree; // the keys of the forest, for resolving misspelled keywords
 
     protected class InternalNode {
 
         String key; // The key of the internal node
         ArrayList<Post> posts; // The posts with this specific keyword
         ArrayList<InternalNode> children; // The children of this key
+        int id; // index of the node in the compiled graph
 
         /**
          * A constructor that initializes the InternalNode instance variables.
@@ -18,10 +39,8 @@ public class Forest {
          * @param key      Node's key
          */
         public InternalNode(String key, Post post) {
-            this.key = key.toLowerCase();
-            this.posts = new ArrayList<>();
-            this.posts.add(post);
-            this.children = new ArrayList<>();
+            this(key);
+            this.addNewPost(post);
         }
 
         /**
@@ -32,9 +51,14 @@ public class Forest {
          * @param key Node's key
          */
         public InternalNode(String key) {
-            this.key = key.toLowerCase();
+            this.key = normalize(key);
             this.posts = new ArrayList<>();
             this.children = new ArrayList<>();
+            this.id = nodes.size();
+            nodes.add(this);
+            graphChanged = true;
+            keywordTrie.setCount(this.key, 0);
+            keywordBKTree.add(this.key);
         }
 
         /**
@@ -62,14 +86,37 @@ public class Forest {
 
         public void addChildren(InternalNode node) {
             this.children.add(node);
+            this.changed(true);
         }
 
         public void setChildren(ArrayList<InternalNode> children) {
             this.children = children;
+            this.changed(true);
         }
 
         public boolean removeChildren(InternalNode node) {
-            return this.children.remove(node);
+            boolean removed = this.children.remove(node);
+            this.changed(true);
+            return removed;
+        }
+
+        /**
+         * Drop the cached searches that visited this node, and mark the
+         * compiled graph as outdated if the children changed
+         *
+         * @param edgesChanged whether the children of this node changed
+         */
+        private void changed(boolean edgesChanged) {
+            cache.invalidate(this.id);
+            if (edgesChanged) {
+                graphChanged = true;
+            }
+            else {
+                InternalNode current = forest.get(this.key);
+                if (current == null || current == this) {
+                    keywordTrie.setCount(this.key, this.posts.size());
+                }
+            }
         }
 
         /**
@@ -79,6 +126,7 @@ public class Forest {
          */
         public void setPostsList(ArrayList<Post> newPosts) {
             this.posts = newPosts;
+            this.changed(false);
         }
 
         /**
@@ -88,6 +136,7 @@ public class Forest {
          */
         public void addNewPost(Post data) {
             this.posts.add(data);
+            this.changed(false);
         }
 
         /**
@@ -98,15 +147,50 @@ public class Forest {
          * @return True if data was found, false otherwise
          */
         public boolean removePost(Post data) {
-            return this.posts.remove(data);
+            boolean removed = this.posts.remove(data);
+            this.changed(false);
+            return removed;
         }
     }
 
+    /**
+     * Normalize a keyword into the form used as a key of the forest, by folding
+     * the case of every character. Lookups fold the case on the fly instead
+     * (see KeywordMap), so this is only needed when a new key is stored.
+     *
+     * @param keyword the keyword
+     * @return the key of the keyword, the same String if it is already normalized
+     */
+    public static String normalize(String keyword) {
+        int i = 0;
+        while (i < keyword.length() && KeywordMap.fold(keyword.charAt(i)) == keyword.charAt(i)) {
+            i++;
+        }
+        if (i == keyword.length()) {
+            return keyword;
+        }
+        char[] chars = keyword.toCharArray();
+        for (; i < chars.length; i++) {
+            chars[i] = KeywordMap.fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
     /**
      * Constructor that initialize the instance variable of the forest
      */
     public Forest() {
-        this.forest = new HashMap<>();
+        this.forest = new KeywordMap<>();
+        this.nodes = new ArrayList<>();
+        this.childStart = new int[1];
+        this.childIds = new int[0];
+        this.frontier = new int[0];
+        this.visitStamp = new int[0];
+        this.stamp = 0;
+        this.graphChanged = false;
+        this.cache = new SimilarPostsCache();
+        this.keywordTrie = new KeywordTrie();
+        this.keywordBKTree = new KeywordBKTree();
     }
 
     /**
@@ -115,9 +199,11 @@ public class Forest {
      * @param key the key of the internal node
      */
     public void insert(String key) {
-        String lowerKey = key.toLowerCase();
-        InternalNode node = new InternalNode(lowerKey);
-        this.forest.put(lowerKey, node);
+        InternalNode node = new InternalNode(key);
+        InternalNode replaced = this.forest.put(node.getKey(), node);
+        if (replaced != null) {
+            this.cache.invalidate(replaced.id);
+        }
     }
 
     /**
@@ -126,11 +212,10 @@ public class Forest {
      * @param post insert the post according to the post's key
      */
     public void insert(Post post) {
-        String postKeyWd = post.getKeyword().toLowerCase();
-        InternalNode nodeWKey = this.nodeLookUp(postKeyWd);
+        InternalNode nodeWKey = this.forest.get(post.getKeyword());
         if (nodeWKey == null){
-            nodeWKey = new InternalNode(postKeyWd, post);
-            this.forest.put(postKeyWd, nodeWKey);
+            nodeWKey = new InternalNode(post.getKeyword(), post);
+            this.forest.put(nodeWKey.getKey(), nodeWKey);
 //            nodeWKey.addNewPost(post); // TODO: VERIFY
         }
         else {
@@ -145,7 +230,6 @@ public class Forest {
      * @param key querying the internal node with this specific key
      */
     public InternalNode nodeLookUp(String key) {
-        key = key.toLowerCase();
         return this.forest.get(key);
     }
 
@@ -157,10 +241,11 @@ public class Forest {
      * @return the Arraylist of posts
      */
     public ArrayList<Post> getPosts(String key) {
-        if (this.nodeLookUp(key.toLowerCase()) == null){
+        InternalNode node = this.nodeLookUp(key);
+        if (node == null){
             throw new IllegalArgumentException();
         }
-        return this.nodeLookUp(key.toLowerCase()).getPosts();
+        return node.getPosts();
     }
 
     /**
@@ -170,14 +255,13 @@ public class Forest {
      * @param children the array of children node's keys
      */
     public void addConnection(String parent, String[] children) {
-        InternalNode parentNode = nodeLookUp(parent.toLowerCase());
+        InternalNode parentNode = nodeLookUp(parent);
         if (parentNode == null) {
             this.insert(parent);
             parentNode = nodeLookUp(parent);
         }
         ArrayList<InternalNode> childrenList = new ArrayList<>();
         for (String key: children) {
-            key = key.toLowerCase();
             InternalNode node = nodeLookUp(key);
             if (node != null) {
                 childrenList.add(node);
@@ -196,13 +280,11 @@ public class Forest {
      * @param child the key of the child key
      */
     public void addConnection(String parent, String child) {
-        parent = parent.toLowerCase();
         InternalNode parentNode = nodeLookUp(parent);
         if (parentNode == null) {
             this.insert(parent);
             parentNode = nodeLookUp(parent);
         }
-        child = child.toLowerCase();
         InternalNode node = nodeLookUp(child);
         if (node != null) {
             parentNode.addChildren(node);
@@ -220,8 +302,7 @@ public class Forest {
      * @return the children of that specific node
      */
     public String[] queryConnection(String key) {
-        String keyLowerCase = key.toLowerCase();
-        InternalNode queryNode = this.nodeLookUp(keyLowerCase);
+        InternalNode queryNode = this.nodeLookUp(key);
         if (queryNode == null){
             return null;
         }
@@ -233,6 +314,264 @@ public class Forest {
         return keys;
     }
 
+    /**
+     * Get the first k posts found by a breadth-first search of the forest that
+     * starts at the node of the keyword and goes at most maxLevel levels down.
+     * Every node is visited once, even if it is the child of several nodes.
+     *
+     * @param keyword the keyword of the node where the search starts
+     * @param k the number of posts to get
+     * @param maxLevel the deepest level to visit, 0 being the starting node
+     * @return the posts, level by level, with null entries if fewer than k
+     *      posts were found, or null if the keyword is not in the forest
+     */
+    public synchronized Post[] searchPosts(String keyword, int k, int maxLevel) {
+        InternalNode start = this.nodeLookUp(keyword);
+        if (start == null) {
+            return null;
+        }
+        Post[] cached = this.cache.get(start.id, k, maxLevel);
+        if (cached != null) {
+            return cached;
+        }
+        Post[] found = new Post[k];
+        int visited = this.search(start, found, maxLevel, false);
+        this.cache.put(start.id, k, maxLevel, found, this.frontier, visited);
+        return found;
+    }
+
+    /**
+     * Same search as searchPosts, but within a level the posts are ranked by
+     * relevance (see relevance) and only the best ones that still fit in k are
+     * kept, using a bounded heap. Posts of closer levels still come first.
+     * The results are not cached, as endorsements change the ranking without
+     * changing the forest.
+     *
+     * @param keyword the keyword of the node where the search starts
+     * @param k the number of posts to get
+     * @param maxLevel the deepest level to visit, 0 being the starting node
+     * @return the posts, level by level and most relevant first within a level,
+     *      with null entries if fewer than k posts were found, or null if the
+     *      keyword is not in the forest
+     */
+    public synchronized Post[] searchRankedPosts(String keyword, int k, int maxLevel) {
+        InternalNode start = this.nodeLookUp(keyword);
+        if (start == null) {
+            return null;
+        }
+        Post[] found = new Post[k];
+        this.search(start, found, maxLevel, true);
+        return found;
+    }
+
+    /**
+     * Relevance of a post for the ranked search: 4 points per endorsement,
+     * 10 points if a course staff endorsed it, minus 1 point per week of age.
+     *
+     * @param p the post
+     * @return the relevance of the post, higher is better
+     */
+    public static long relevance(Post p) {
+        long ageWeeks = (p.clock.today() - p.epochDay) / 7;
+        return 4L * p.getEndorsementCount() + (p.endorsedByCourseStaff.get() ? 10 : 0) - ageWeeks;
+    }
+
+    /**
+     * Breadth-first search from the start node that fills found with posts,
+     * level by level, until it is full or maxLevel is passed.
+     *
+     * @param ranked whether the posts of a level are ranked by relevance
+     * @return the number of nodes visited, their ids are the first entries of frontier
+     */
+    private int search(InternalNode start, Post[] found, int maxLevel, boolean ranked) {
+        if (this.graphChanged) {
+            this.compileGraph();
+        }
+        int k = found.length;
+        PriorityQueue<Scored> best = ranked ? new PriorityQueue<>(Math.max(1, k), RELEVANCE_ORDER) : null;
+        int numFound = 0;
+        int stamp = this.nextStamp();
+        int head = 0;
+        int tail = 0;
+        this.frontier[tail++] = start.id;
+        this.visitStamp[start.id] = stamp;
+        int level = 0;
+        while (head < tail && numFound < k && level <= maxLevel) {
+            int levelEnd = tail;
+            for (int i = head; i < levelEnd; i++) {
+                int id = this.frontier[i];
+                for (int c = this.childStart[id]; c < this.childStart[id + 1]; c++) {
+                    int child = this.childIds[c];
+                    if (this.visitStamp[child] != stamp) {
+                        this.visitStamp[child] = stamp;
+                        this.frontier[tail++] = child;
+                    }
+                }
+                ArrayList<Post> posts = this.nodes.get(id).posts;
+                if (ranked) {
+                    for (int j = 0; j < posts.size(); j++) {
+                        if (posts.get(j).tombstoned) {
+                            continue;
+                        }
+                        Scored scored = new Scored(posts.get(j)); // scored once, endorsements may keep coming in
+                        if (best.size() == k - numFound && RELEVANCE_ORDER.compare(scored, best.peek()) <= 0) {
+                            continue; // not better than the worst kept post
+                        }
+                        best.add(scored);
+                        if (best.size() > k - numFound) {
+                            best.poll();
+                        }
+                    }
+                }
+                else {
+                    for (int j = 0; j < posts.size() && numFound < k; j++) {
+                        if (!posts.get(j).tombstoned) {
+                            found[numFound++] = posts.get(j);
+                        }
+                    }
+                }
+            }
+            if (ranked) {
+                int numBest = best.size();
+                for (int j = numFound + numBest - 1; j >= numFound; j--) {
+                    found[j] = best.poll().post;
+                }
+                numFound += numBest;
+            }
+            head = levelEnd;
+            level++;
+        }
+        return head;
+    }
+
+    /**
+     * A post with its relevance and day frozen when it was offered to the
+     * ranked search, so the heap order can't change while the post is in it
+     */
+    private static class Scored {
+        final Post post;
+        final long relevance;
+        final long day;
+
+        Scored(Post post) {
+            this.post = post;
+            this.relevance = relevance(post);
+            this.day = post.epochDay;
+        }
+    }
+
+    // Least relevant first, so the bounded heap drops the worst post. Ties
+    // go to the most recent post.
+    private static final Comparator<Scored> RELEVANCE_ORDER = (a, b) -> {
+        int byRelevance = Long.compare(a.relevance, b.relevance);
+        if (byRelevance != 0) {
+            return byRelevance;
+        }
+        return Long.compare(a.day, b.day);
+    };
+
+    /**
+     * Suggest the keywords of the forest that start with the prefix, the
+     * keywords with the most posts first
+     *
+     * @param prefix the beginning of the keyword, in any case
+     * @param n the number of keywords to get, at most KeywordTrie.MAX_SUGGESTIONS
+     * @return the keywords
+     */
+    public String[] suggestKeywords(String prefix, int n) {
+        return this.keywordTrie.suggest(prefix, n);
+    }
+
+    /**
+     * Get the keys of the forest within the edit distance of the keyword, the
+     * closest first
+     *
+     * @param keyword the keyword, possibly misspelled
+     * @param maxDistance the largest edit distance allowed
+     * @return the keys, empty if there is none
+     */
+    public synchronized String[] closestKeywords(String keyword, int maxDistance) {
+        return this.keywordBKTree.closest(keyword, maxDistance);
+    }
+
+    /**
+     * Look the keyword up, falling back to the closest key of the forest
+     * within the edit distance if the keyword is not in the forest
+     *
+     * @param keyword the keyword, possibly misspelled
+     * @param maxDistance the largest edit distance allowed
+     * @return the node of the keyword or of the closest key, null if there is none
+     */
+    public InternalNode fuzzyLookUp(String keyword, int maxDistance) {
+        InternalNode node = this.nodeLookUp(keyword);
+        if (node != null) {
+            return node;
+        }
+        String[] closest = this.closestKeywords(keyword, maxDistance);
+        return closest.length == 0 ? null : this.nodeLookUp(closest[0]);
+    }
+
+    /**
+     * Get the cache of the similar post searches, to read its hit, miss and eviction counters
+     *
+     * @return the cache
+     */
+    public SimilarPostsCache getSimilarPostsCache() {
+        return this.cache;
+    }
+
+    /**
+     * Compile the children lists of every node into the CSR arrays, and grow
+     * the search buffers to the number of nodes
+     */
+    private void compileGraph() {
+        int n = this.nodes.size();
+        int[] start = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            start[i + 1] = start[i] + this.nodes.get(i).children.size();
+        }
+        int[] ids = new int[start[n]];
+        for (int i = 0; i < n; i++) {
+            ArrayList<InternalNode> children = this.nodes.get(i).children;
+            for (int j = 0; j < children.size(); j++) {
+                ids[start[i] + j] = children.get(j).id;
+            }
+        }
+        this.childStart = start;
+        this.childIds = ids;
+        if (this.frontier.length < n) {
+            this.frontier = new int[n];
+            this.visitStamp = new int[n];
+            this.stamp = 0;
+        }
+        this.graphChanged = false;
+    }
+
+    /**
+     * Get a new stamp for marking the nodes visited by a search, so the marks
+     * of the previous search don't need to be cleared
+     */
+    private int nextStamp() {
+        if (this.stamp == Integer.MAX_VALUE) {
+            Arrays.fill(this.visitStamp, 0);
+            this.stamp = 0;
+        }
+        return ++this.stamp;
+    }
+
+    /**
+     * Drop the cached searches that saw the tombstoned post, so it stops
+     * showing up before it is deleted from its node
+     *
+     * @param post the tombstoned post
+     */
+    public void tombstone(Post post) {
+        InternalNode postNode = this.nodeLookUp(post.getKeyword());
+        if (postNode != null) {
+            this.cache.invalidate(postNode.id);
+        }
+    }
+
     /**
      * Delete the specific value (post) from the forest
      *
@@ -240,12 +579,11 @@ public class Forest {
      * @return whether the deletion was successful
      */
     public boolean delete(Post post) {
-        String postKeyWd = post.getKeyword().toLowerCase();
-        InternalNode postNode = nodeLookUp(postKeyWd);
+        InternalNode postNode = nodeLookUp(post.getKeyword());
         if (postNode == null){
             return false;
         }
-        return this.forest.get(postKeyWd).removePost(post);
+        return postNode.removePost(post);
 //        return postNode.removePost(post);
 
     }
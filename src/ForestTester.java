@@ -60,4 +60,97 @@ public class ForestTester {
 
         assertArrayEquals(expected, output);
     }
+
+    @Test
+    public void testSearchPostsVisitsSharedChildOnce() {
+        p4 = new Note(prof, placeHolder, placeHolder, "heap", "DSC30", "p4");
+        forest.insert(p1);
+        forest.insert(p2);
+        forest.insert(p4);
+        forest.addConnection("midterm", new String[]{"bst", "tree"});
+        forest.addConnection("tree", new String[]{"bst", "heap"});
+
+        assertArrayEquals(new Post[]{p1, p2, p4, null}, forest.searchPosts("midterm", 4, Integer.MAX_VALUE));
+        assertArrayEquals(new Post[]{p1, p2, null, null}, forest.searchPosts("Midterm", 4, 1));
+        assertNull(forest.searchPosts("final", 4, 1));
+
+        forest.addConnection("bst", "final");
+        forest.insert(new Note(prof, placeHolder, placeHolder, "final", "DSC30", "p5"));
+        assertEquals(4, Arrays.stream(forest.searchPosts("midterm", 4, 2)).filter(p -> p != null).count());
+    }
+
+    @Test
+    public void testSearchCacheInvalidation() {
+        forest.insert(p1);
+        forest.insert(p2);
+        forest.addConnection("midterm", "bst");
+        forest.addConnection("final", "exam");
+        SimilarPostsCache cache = forest.getSimilarPostsCache();
+
+        forest.searchPosts("midterm", 3, 1);
+        forest.searchPosts("final", 3, 1);
+        assertArrayEquals(new Post[]{p1, p2, null}, forest.searchPosts("midterm", 3, 1));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // exam is not reachable from midterm, so its cached result is kept
+        forest.insert(new Note(prof, placeHolder, placeHolder, "exam", "DSC30", "p5"));
+        assertEquals(1, cache.size());
+        forest.searchPosts("midterm", 3, 1);
+        assertEquals(2, cache.getHits());
+
+        p4 = new Note(prof, placeHolder, placeHolder, "BST", "DSC30", "p4");
+        forest.insert(p4);
+        assertArrayEquals(new Post[]{p1, p2, p4}, forest.searchPosts("midterm", 3, 1));
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testSuggestKeywords() {
+        String[] keywords = new String[]{"hash table", "hash function", "hash table", "heap", "Hash Table",
+                "hash function", "hashing"};
+        for (String keyword : keywords) {
+            forest.insert(new Question(prof, placeHolder, placeHolder, keyword, placeHolder, "q"));
+        }
+        forest.addConnection("hash table", "hash set");
+
+        assertArrayEquals(new String[]{"hash table", "hash function", "hashing", "hash set"},
+                forest.suggestKeywords("HASH", 10));
+        assertArrayEquals(new String[]{"hash table", "hash function"}, forest.suggestKeywords("hash", 2));
+        assertArrayEquals(new String[]{"heap"}, forest.suggestKeywords("he", 10));
+        assertArrayEquals(new String[0], forest.suggestKeywords("tree", 10));
+
+        Post[] hashing = forest.getPosts("hashing").toArray(new Post[0]);
+        forest.delete(hashing[0]);
+        assertArrayEquals(new String[]{"hash table", "hash function", "hash set", "hashing"},
+                forest.suggestKeywords("hash", 4));
+    }
+
+    @Test
+    public void testFuzzyLookUp() {
+        String[] keywords = new String[]{"hash table", "hash set", "hashing", "heap", "priority queue", "linked list"};
+        for (String keyword : keywords) {
+            forest.insert(new Question(prof, placeHolder, placeHolder, keyword, placeHolder, "q"));
+        }
+
+        assertArrayEquals(new String[]{"hash table"}, forest.closestKeywords("hashtable", 2));
+        assertArrayEquals(new String[]{"hash set", "hashing"}, forest.closestKeywords("Hash Se", 3));
+        assertEquals("priority queue", forest.fuzzyLookUp("prority queue", 2).getKey());
+        assertEquals("linked list", forest.fuzzyLookUp("linkedlist", 2).getKey());
+        assertSame(forest.nodeLookUp("heap"), forest.fuzzyLookUp("HEAP", 0));
+        assertNull(forest.fuzzyLookUp("tree", 1));
+    }
+
+    @Test
+    public void testLookUpIgnoresCase() {
+        forest.insert(p1);
+        forest.insert(p2);
+        assertSame(forest.nodeLookUp("midterm"), forest.nodeLookUp("MidTerm"));
+        assertEquals("bst", forest.nodeLookUp("BST").getKey());
+        assertEquals(1, forest.getPosts("bSt").size());
+        assertNull(forest.nodeLookUp("bsts"));
+        assertEquals("hash table", Forest.normalize("Hash Table"));
+        String normalized = "heap";
+        assertSame(normalized, Forest.normalize(normalized));
+    }
 }
\ No newline at end of file
@@ -11,28 +11,22 @@ public class Instructor extends User{
             return false;
         }
         ((Question) p).answerQuestion(response);
-        if (!this.posts.contains(p)) {
-            this.posts.add(p);
-        }
-        this.numOfPostsAnswered++;
-        String userCourseID = p.parentPEID;
-        PiazzaExchange postPE;
-        for (PiazzaExchange pe : courses){
-            if (pe.courseID.equals(userCourseID)){
-                postPE = pe;
-                postPE.unanswered.remove(p);
-                break;
-            }
+        this.addToPosts(p);
+        this.numOfPostsAnswered.increment();
+        this.notifyContributionChanged();
+        if (p.piazza != null){
+            p.piazza.questionAnswered(p);
         }
         return true;
     }
 
     @Override
     public boolean endorsePost(Post p) {
-        if (!p.endorsedByCourseStaff){
-            p.endorsementCount++;
-            p.poster.numOfEndorsement++;
-            p.endorsedByCourseStaff = true;
+        if (p.endorsedByCourseStaff.compareAndSet(false, true)){ // only the first staff endorsement counts
+            p.endorsementCount.increment();
+            p.poster.numOfEndorsement.increment();
+            p.poster.notifyContributionChanged();
+            this.notifyEndorsed(p);
             return true;
         }
         return false;
@@ -62,8 +56,9 @@ public class Instructor extends User{
 
     public boolean editPost(Post p, String newText){
         p.editText(newText);
-        if (!this.posts.contains(p)){
-            this.numOfPostSubmitted++;
+        if (!this.hasPost(p)){
+            this.numOfPostSubmitted.increment();
+            this.notifyContributionChanged();
         }
         return true;
     }
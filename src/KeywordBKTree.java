@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * BK-tree over the keywords of a Forest, used to resolve misspelled keywords.
+ * Every child of a node is filed under its edit distance to the node, so by
+ * the triangle inequality a search within distance d only descends into the
+ * children filed between distance - d and distance + d, and most keywords are
+ * never compared with the query. Keywords are stored normalized.
+ */
+public class KeywordBKTree {
+
+    private static class Node {
+        String keyword; // the normalized keyword
+        HashMap<Integer, Node> children = new HashMap<>(); // edit distance to this keyword -> child
+
+        Node(String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    private Node root;
+    private int size; // number of keywords
+
+    // Rows reused by every edit distance computation
+    private int[] previousRow;
+    private int[] currentRow;
+
+    /**
+     * Constructor that initialize an empty tree
+     */
+    public KeywordBKTree() {
+        this.root = null;
+        this.size = 0;
+        this.previousRow = new int[16];
+        this.currentRow = new int[16];
+    }
+
+    /**
+     * Add the keyword, if it is not in the tree yet
+     *
+     * @param keyword the normalized keyword
+     * @return whether the keyword was added
+     */
+    public boolean add(String keyword) {
+        if (this.root == null) {
+            this.root = new Node(keyword);
+            this.size++;
+            return true;
+        }
+        Node node = this.root;
+        while (true) {
+            int distance = this.distance(keyword, node.keyword);
+            if (distance == 0) {
+                return false;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(keyword));
+                this.size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Get the keywords within the edit distance of the word, the closest first
+     * and in alphabetical order for the same distance
+     *
+     * @param word the word, in any case
+     * @param maxDistance the largest edit distance allowed
+     * @return the keywords, empty if there is none
+     */
+    public String[] closest(String word, int maxDistance) {
+        ArrayList<Node> found = new ArrayList<>();
+        ArrayList<Integer> distances = new ArrayList<>();
+        if (this.root != null && maxDistance >= 0) {
+            String normalized = Forest.normalize(word);
+            ArrayList<Node> toVisit = new ArrayList<>();
+            toVisit.add(this.root);
+            while (!toVisit.isEmpty()) {
+                Node node = toVisit.remove(toVisit.size() - 1);
+                int distance = this.distance(normalized, node.keyword);
+                if (distance <= maxDistance) {
+                    int i = found.size();
+                    while (i > 0 && (distances.get(i - 1) > distance || (distances.get(i - 1) == distance
+                            && found.get(i - 1).keyword.compareTo(node.keyword) > 0))) {
+                        i--;
+                    }
+                    found.add(i, node);
+                    distances.add(i, distance);
+                }
+                for (HashMap.Entry<Integer, Node> child : node.children.entrySet()) {
+                    if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                        toVisit.add(child.getValue());
+                    }
+                }
+            }
+        }
+        String[] keywords = new String[found.size()];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = found.get(i).keyword;
+        }
+        return keywords;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Levenshtein distance between the two words, keeping only two rows of the
+     * dynamic programming table
+     */
+    private int distance(String a, String b) {
+        if (b.length() + 1 > this.previousRow.length) {
+            this.previousRow = new int[2 * (b.length() + 1)];
+            this.currentRow = new int[2 * (b.length() + 1)];
+        }
+        int[] previous = this.previousRow;
+        int[] current = this.currentRow;
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
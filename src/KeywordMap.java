@@ -0,0 +1,125 @@
+/**
+ * Hash map from keywords to values where keywords are not case sensitive.
+ * Hashing and equality fold the case of each character on the fly, so looking
+ * a keyword up never allocates a lower-cased copy of it. Keys are stored in
+ * their normalized form (see Forest.normalize).
+ *
+ * @param <V> the type of the values
+ */
+public class KeywordMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 32;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static class Entry<V> {
+        String key; // the normalized keyword
+        int hash; // case-insensitive hash of the key
+        V value;
+        Entry<V> next; // next entry in the same bucket
+
+        Entry(String key, int hash, V value, Entry<V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private Entry<V>[] table; // buckets of the hash table
+    private int size; // number of entries
+
+    /**
+     * Constructor that initialize an empty map
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public KeywordMap() {
+        this.table = (Entry<V>[]) new Entry[DEFAULT_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Fold the case of a character, the same way String.equalsIgnoreCase does
+     *
+     * @param c the character
+     * @return the folded character
+     */
+    static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Case-insensitive hash of the keyword
+     */
+    private static int hash(String keyword) {
+        int h = 0;
+        for (int i = 0; i < keyword.length(); i++) {
+            h = 31 * h + fold(keyword.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the value of the keyword, ignoring case
+     *
+     * @param keyword the keyword
+     * @return the value, or null if the keyword is not in the map
+     */
+    public V get(String keyword) {
+        int h = hash(keyword);
+        for (Entry<V> e = this.table[h & (this.table.length - 1)]; e != null; e = e.next) {
+            if (e.hash == h && e.key.equalsIgnoreCase(keyword)) {
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(String keyword) {
+        return this.get(keyword) != null;
+    }
+
+    /**
+     * Associate the value with the keyword, replacing the previous value
+     *
+     * @param keyword the keyword, stored in its normalized form
+     * @param value the value, not null
+     * @return the previous value, or null if there was none
+     */
+    public V put(String keyword, V value) {
+        int h = hash(keyword);
+        int bucket = h & (this.table.length - 1);
+        for (Entry<V> e = this.table[bucket]; e != null; e = e.next) {
+            if (e.hash == h && e.key.equalsIgnoreCase(keyword)) {
+                V old = e.value;
+                e.value = value;
+                return old;
+            }
+        }
+        this.table[bucket] = new Entry<>(Forest.normalize(keyword), h, value, this.table[bucket]);
+        this.size++;
+        if (this.size > this.table.length * LOAD_FACTOR) {
+            this.resize();
+        }
+        return null;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void resize() {
+        Entry<V>[] old = this.table;
+        this.table = (Entry<V>[]) new Entry[old.length * 2];
+        for (Entry<V> head : old) {
+            Entry<V> e = head;
+            while (e != null) {
+                Entry<V> next = e.next;
+                int bucket = e.hash & (this.table.length - 1);
+                e.next = this.table[bucket];
+                this.table[bucket] = e;
+                e = next;
+            }
+        }
+    }
+}
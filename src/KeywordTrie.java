@@ -0,0 +1,132 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Prefix trie over the keywords of a Forest, used to suggest keywords as the
+ * user types. Every trie node keeps the best completions of its subtree,
+ * ranked by post count, so the top n completions of a prefix are found in
+ * O(prefix + n). Prefixes are not case sensitive.
+ */
+public class KeywordTrie {
+
+    public static final int MAX_SUGGESTIONS = 16; // completions kept in every node
+
+    private static class Completion {
+        String keyword; // the normalized keyword
+        int count; // number of posts with this keyword
+
+        Completion(String keyword) {
+            this.keyword = keyword;
+            this.count = 0;
+        }
+
+        /**
+         * Whether this completion is ranked before the other one: more posts
+         * first, then alphabetical order
+         */
+        boolean before(Completion other) {
+            if (this.count != other.count) {
+                return this.count > other.count;
+            }
+            return this.keyword.compareTo(other.keyword) < 0;
+        }
+    }
+
+    private static class Node {
+        HashMap<Character, Node> children = new HashMap<>();
+        Node parent;
+        Completion completion; // the keyword ending at this node, null if none
+        ArrayList<Completion> top = new ArrayList<>(); // best completions of the subtree, best first
+
+        Node(Node parent) {
+            this.parent = parent;
+        }
+    }
+
+    private Node root;
+
+    /**
+     * Constructor that initialize an empty trie
+     */
+    public KeywordTrie() {
+        this.root = new Node(null);
+    }
+
+    /**
+     * Set the number of posts of the keyword, adding the keyword if it is new
+     *
+     * @param keyword the normalized keyword
+     * @param count the number of posts with the keyword
+     */
+    public void setCount(String keyword, int count) {
+        Node node = this.root;
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node(node);
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        if (node.completion == null) {
+            node.completion = new Completion(keyword);
+        }
+        else if (node.completion.count == count) {
+            return;
+        }
+        node.completion.count = count;
+        for (; node != null; node = node.parent) {
+            this.rebuildTop(node);
+        }
+    }
+
+    /**
+     * Get the keywords that start with the prefix, the ones with the most posts first
+     *
+     * @param prefix the beginning of the keyword, in any case
+     * @param n the number of keywords to get, at most MAX_SUGGESTIONS
+     * @return the keywords, fewer than n if there are not enough
+     */
+    public String[] suggest(String prefix, int n) {
+        Node node = this.root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(KeywordMap.fold(prefix.charAt(i)));
+        }
+        if (node == null) {
+            return new String[0];
+        }
+        String[] suggestions = new String[Math.max(0, Math.min(n, node.top.size()))];
+        for (int i = 0; i < suggestions.length; i++) {
+            suggestions[i] = node.top.get(i).keyword;
+        }
+        return suggestions;
+    }
+
+    /**
+     * Compute the best completions of the node from its own keyword and the
+     * best completions of its children
+     */
+    private void rebuildTop(Node node) {
+        ArrayList<Completion> top = new ArrayList<>(MAX_SUGGESTIONS);
+        if (node.completion != null) {
+            top.add(node.completion);
+        }
+        for (Node child : node.children.values()) {
+            for (Completion completion : child.top) {
+                if (top.size() == MAX_SUGGESTIONS && !completion.before(top.get(MAX_SUGGESTIONS - 1))) {
+                    break; // child.top is sorted, the rest is not better
+                }
+                int i = top.size();
+                while (i > 0 && completion.before(top.get(i - 1))) {
+                    i--;
+                }
+                top.add(i, completion);
+                if (top.size() > MAX_SUGGESTIONS) {
+                    top.remove(MAX_SUGGESTIONS);
+                }
+            }
+        }
+        node.top = top;
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Orders the posts of a PiazzaExchange from the most recent to the oldest, by
+ * date and then by the order in which they were added. The log is read in
+ * pages: a cursor remembers where the last page stopped, so every page, no
+ * matter how deep, costs O(log n + pageSize).
+ *
+ * A cursor has the form "epochDay:sequence", the position of the last post
+ * returned. The cursor comes from the client, so how deep a user may read is
+ * not taken from it but from the position of the last post the user may see.
+ */
+public class LogIndex {
+
+    private static class Key implements Comparable<Key> {
+        long day; // the date of the post as an epoch day
+        long seq; // the order in which the post was added
+
+        Key(long day, long seq) {
+            this.day = day;
+            this.seq = seq;
+        }
+
+        /**
+         * Most recent day first, then most recently added first
+         */
+        @Override
+        public int compareTo(Key other) {
+            if (this.day != other.day) {
+                return Long.compare(other.day, this.day);
+            }
+            return Long.compare(other.seq, this.seq);
+        }
+    }
+
+    private TreeMap<Key, Post> log; // the posts, most recent first
+    private HashMap<Post, Key> keys; // post -> its key in the log
+    private long nextSeq; // sequence number given to the next added post
+
+    /**
+     * Constructor that initialize an empty log
+     */
+    public LogIndex() {
+        this.log = new TreeMap<>();
+        this.keys = new HashMap<>();
+        this.nextSeq = 0;
+    }
+
+    /**
+     * Add the post to the log
+     *
+     * @param p the post to add
+     */
+    public void add(Post p) {
+        if (this.keys.containsKey(p)) {
+            return;
+        }
+        Key key = new Key(p.epochDay, this.nextSeq++);
+        this.keys.put(p, key);
+        this.log.put(key, p);
+    }
+
+    /**
+     * Remove the post from the log
+     *
+     * @param p the post to remove
+     * @return whether the post was found and removed
+     */
+    public boolean remove(Post p) {
+        Key key = this.keys.remove(p);
+        if (key == null) {
+            return false;
+        }
+        this.log.remove(key);
+        return true;
+    }
+
+    /**
+     * Move the post to its new place after its date changed
+     *
+     * @param p the post whose date changed
+     */
+    public void move(Post p) {
+        Key key = this.keys.get(p);
+        if (key == null || key.day == p.epochDay) {
+            return;
+        }
+        this.log.remove(key);
+        key = new Key(p.epochDay, key.seq);
+        this.keys.put(p, key);
+        this.log.put(key, p);
+    }
+
+    /**
+     * Get the page of the log that starts after the cursor
+     *
+     * @param cursor the cursor returned with the previous page, null for the first page
+     * @param pageSize the maximum number of posts in the page
+     * @param limit the maximum number of posts returned over all the pages
+     * @return the page
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public LogPage page(String cursor, int pageSize, int limit) {
+        Key from = null;
+        if (cursor != null) {
+            String[] parts = cursor.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            try {
+                from = new Key(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            }
+            catch (NumberFormatException err) {
+                throw new IllegalArgumentException(err);
+            }
+        }
+        Key to = this.lastVisible(limit);
+        if (from != null && to != null && from.compareTo(to) >= 0) {
+            return new LogPage(new Post[0], null); // already past the last post the user may see
+        }
+        NavigableMap<Key, Post> rest = this.log;
+        if (from != null) {
+            rest = rest.tailMap(from, false);
+        }
+        if (to != null) {
+            rest = rest.headMap(to, true);
+        }
+        Post[] page = new Post[Math.max(0, Math.min(pageSize, this.keys.size()))];
+        int numPosts = 0;
+        Key last = null;
+        Iterator<Map.Entry<Key, Post>> iter = rest.entrySet().iterator();
+        while (numPosts < page.length && iter.hasNext()) {
+            Map.Entry<Key, Post> entry = iter.next();
+            last = entry.getKey();
+            if (!entry.getValue().tombstoned) {
+                page[numPosts++] = entry.getValue();
+            }
+        }
+        if (numPosts < page.length) {
+            page = Arrays.copyOf(page, numPosts);
+        }
+        if (last == null || !iter.hasNext()) {
+            return new LogPage(page, null);
+        }
+        return new LogPage(page, last.day + ":" + last.seq);
+    }
+
+    /**
+     * Find the key of the last post a user limited to the given number of
+     * posts may see, walking the first posts of the log: O(limit) for the
+     * small limits of students.
+     *
+     * @param limit the maximum number of posts the user may see
+     * @return the key of the limit-th live post, null if the user may see every post
+     */
+    private Key lastVisible(int limit) {
+        if (limit >= this.keys.size()) {
+            return null;
+        }
+        int live = 0;
+        for (Map.Entry<Key, Post> entry : this.log.entrySet()) {
+            if (!entry.getValue().tombstoned && ++live == limit) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copy the most recent posts, most recent first, skipping tombstoned posts
+     *
+     * @param length the maximum number of posts to copy
+     * @return the posts, read-only
+     */
+    public List<Post> recent(int length) {
+        ArrayList<Post> recent = new ArrayList<>(Math.max(0, Math.min(length, this.keys.size())));
+        Iterator<Post> iter = this.log.values().iterator();
+        while (recent.size() < length && iter.hasNext()) {
+            Post p = iter.next();
+            if (!p.tombstoned) {
+                recent.add(p);
+            }
+        }
+        return Collections.unmodifiableList(recent);
+    }
+
+    public int size() {
+        return this.log.size();
+    }
+}
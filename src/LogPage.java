@@ -0,0 +1,32 @@
+/**
+ * One page of the posts log, most recent post first, together with the cursor
+ * that fetches the page after it.
+ */
+public class LogPage {
+
+    private Post[] posts; // the posts of this page
+    private String nextCursor; // cursor of the next page, null if this is the last page
+
+    /**
+     * Constructor of the LogPage
+     *
+     * @param posts the posts of this page
+     * @param nextCursor the cursor of the next page, null if there is none
+     */
+    public LogPage(Post[] posts, String nextCursor) {
+        this.posts = posts;
+        this.nextCursor = nextCursor;
+    }
+
+    public Post[] getPosts() {
+        return this.posts;
+    }
+
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
+
+    public boolean hasNext() {
+        return this.nextCursor != null;
+    }
+}
@@ -0,0 +1,115 @@
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock used to compute the age of posts. Today's date is cached as an epoch
+ * day, so reading it does not touch the system clock. The cached day is moved
+ * forward by refresh(), which the day-rollover job calls right after midnight.
+ */
+public class PiazzaClock {
+
+    private static PiazzaClock systemClock; // shared clock, rolls over by itself
+
+    private final Clock clock; // the underlying source of time
+    private volatile long today; // today's date as an epoch day
+    private ScheduledExecutorService rollover; // runs the day-rollover job, null when not started
+
+    /**
+     * Constructor of the PiazzaClock. The day-rollover job is not started, so the
+     * cached day only changes when refresh() is called.
+     *
+     * @param clock the underlying source of time
+     */
+    public PiazzaClock(Clock clock) {
+        this.clock = clock;
+        this.today = LocalDate.now(clock).toEpochDay();
+    }
+
+    /**
+     * Get the shared clock that follows the system time. Its day-rollover job
+     * is started the first time it is requested.
+     *
+     * @return the shared system clock
+     */
+    public static synchronized PiazzaClock systemClock() {
+        if (systemClock == null) {
+            systemClock = new PiazzaClock(Clock.systemDefaultZone());
+            systemClock.startDayRollover();
+        }
+        return systemClock;
+    }
+
+    /**
+     * Get today's date as an epoch day
+     *
+     * @return the number of days since 1970-01-01
+     */
+    public long today() {
+        return this.today;
+    }
+
+    public LocalDate todayDate() {
+        return LocalDate.ofEpochDay(this.today);
+    }
+
+    /**
+     * Read the underlying clock again and update the cached day
+     *
+     * @return whether the day changed
+     */
+    public boolean refresh() {
+        long now = LocalDate.now(this.clock).toEpochDay();
+        if (now == this.today) {
+            return false;
+        }
+        this.today = now;
+        return true;
+    }
+
+    /**
+     * Start the background job that refreshes the cached day at every midnight
+     */
+    public synchronized void startDayRollover() {
+        if (this.rollover != null) {
+            return;
+        }
+        this.rollover = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "piazza-day-rollover");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduleNextRollover();
+    }
+
+    /**
+     * Stop the day-rollover job
+     */
+    public synchronized void stopDayRollover() {
+        if (this.rollover != null) {
+            this.rollover.shutdownNow();
+            this.rollover = null;
+        }
+    }
+
+    /**
+     * Schedule a refresh for the next midnight. The delay is computed again
+     * every day so that days that are not 24 hours long are handled.
+     */
+    private synchronized void scheduleNextRollover() {
+        if (this.rollover == null) {
+            return;
+        }
+        ZonedDateTime now = ZonedDateTime.now(this.clock);
+        ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+        long delay = Duration.between(now, midnight).toMillis() + 1;
+        this.rollover.schedule(() -> {
+            this.refresh();
+            this.scheduleNextRollover();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,21 +1,58 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * A course forum. It is safe to use from many threads: the queries share a
+ * read lock and run in parallel, the updates take the write lock. Indexes that
+ * keep caches or buffers while they are read (the Forest searches, the monthly
+ * post stats) also lock themselves. No method calls into another course while
+ * holding the lock, so two courses sharing users never wait on each other:
+ * the other courses of a user are told about changes once the lock is released.
+ * The view and retrieve methods return copies taken under the lock, so they
+ * can be read while other threads write.
+ *
+ * The log of all posts, the stats and the daily post counts are read from
+ * versioned snapshots instead: readers take no lock and writers never wait
+ * for them.
+ */
 public class PiazzaExchange {
 
     String courseID; // unique identifier for the course (Eg:DSC30)
     Instructor instructor; // instructor of this course
-    ArrayList<User> users; // stores users enrolled in this course
-    ArrayList<Post> posts; // stores all posts created in this course
-    ArrayList<Post> unanswered; // stores unanswered posts(optional)
+    Roster users; // stores users enrolled in this course, keyed by PID
+    PostStore posts; // stores all posts created in this course, keyed by UID
+    UrgencyHeap unanswered; // stores unanswered posts, most urgent on top
     String status; // status of the course (active/inactive)
     boolean selfEnroll; // whether the self-enrollment option is enabled
     private Forest keywordForest; // stores keywords and their corresponding posts in the structure of forest (mentioned in later sections)
-    HashMap<String, ArrayList<Post>> keywordHash;
+    PiazzaClock clock; // tells the current day when computing the priority of posts
+    private volatile long keyedDay; // the epoch day the priorities in unanswered were computed on
+    private PostHistogram postHistogram; // number of posts per day, for the daily and monthly stats
+    private PostCountTree postCountTree; // number of posts per day, for stats over any date range
+    private EndorsementLeaderboard endorsementLeaderboard; // posts ranked by their endorsements
+    private ContributionRanking contributionRanking; // students ranked by their contributions
+    private LogIndex logIndex; // posts from the most recent to the oldest, for reading the log in pages
+    private TextIndex textIndex; // words of the header and text of the posts, for full-text search
+    private ArrayDeque<Post> tombstones; // deleted posts waiting to be removed from the indexes, oldest first
+    private VersionedLog<Post> postLog; // the posts in the order they were added, read in snapshots without locking
+    private boolean compactionScheduled; // whether the background compactor will run for this piazza
+    private final ReentrantReadWriteLock lock; // shared by queries, held alone by updates
+    private final Set<Post> endorsed; // posts endorsed since the leaderboard and unanswered post DS were refreshed, added to without locking
+
+    private static ScheduledExecutorService compactor; // background thread that compacts the tombstones of every piazza
 
 
     private static final String STATS_STRING = "%s submitted %d posts, answered %d posts, received %d endorsements\n";
+    private static final int MAX_TYPO_DISTANCE = 2; // edits allowed when a keyword is not in the forest
+    private static final int COMPACTION_BATCH = 64; // tombstones removed from the indexes at once
+    private static final long COMPACTION_DELAY = 1000; // milliseconds a tombstone waits before a compaction starts
 
     /**
      * Constructor of the PiazzaExchange.
@@ -25,16 +62,39 @@ public class PiazzaExchange {
      * @param selfEnroll whether the class allow self enrolling or not.
      */
     public PiazzaExchange(Instructor instructor, String courseID, boolean selfEnroll) {
+        this(instructor, courseID, selfEnroll, PiazzaClock.systemClock());
+    }
+
+    /**
+     * Constructor of the PiazzaExchange with a specific clock.
+     *
+     * @param instructor the instructor of this class
+     * @param courseID The course ID
+     * @param selfEnroll whether the class allow self enrolling or not.
+     * @param clock the clock used to compute the priority of the posts
+     */
+    public PiazzaExchange(Instructor instructor, String courseID, boolean selfEnroll, PiazzaClock clock) {
+        this.lock = new ReentrantReadWriteLock();
+        this.endorsed = ConcurrentHashMap.newKeySet();
         this.instructor = instructor;
         this.courseID = courseID;
         this.selfEnroll = selfEnroll;
         this.status = "inactive";
-        this.users = new ArrayList<>();
-        this.posts = new ArrayList<>();
-        this.unanswered = new ArrayList<>();
+        this.users = new Roster();
+        this.posts = new PostStore();
+        this.unanswered = new UrgencyHeap();
         this.keywordForest = new Forest();
         this.initializeForest();
-        this.keywordHash = new HashMap<>();
+        this.clock = clock;
+        this.keyedDay = clock.today();
+        this.postHistogram = new PostHistogram(clock);
+        this.postCountTree = new PostCountTree(clock.today());
+        this.endorsementLeaderboard = new EndorsementLeaderboard();
+        this.contributionRanking = new ContributionRanking();
+        this.logIndex = new LogIndex();
+        this.textIndex = new TextIndex();
+        this.tombstones = new ArrayDeque<>();
+        this.postLog = new VersionedLog<>();
     }
 
     //is there a reason why we don't combine these two constructors?
@@ -47,19 +107,33 @@ public class PiazzaExchange {
      * @param roster the list of Users that will be included in this piazza
      */
     public PiazzaExchange(Instructor instructor, ArrayList<User> roster) {
+        this.lock = new ReentrantReadWriteLock();
+        this.endorsed = ConcurrentHashMap.newKeySet();
         this.instructor = instructor;
         this.courseID = "DSC30";
         this.selfEnroll = false;
         this.status = "inactive";
-        this.users = roster;
+        this.users = new Roster(roster.size());
+        this.contributionRanking = new ContributionRanking();
         for (User user : roster){
-            user.courses.add(this);
+            if (this.users.add(user)){
+                user.courses.add(this);
+                this.rankContributions(user);
+            }
         }
-        this.posts = new ArrayList<>();
-        this.unanswered = new ArrayList<>();
+        this.posts = new PostStore();
+        this.unanswered = new UrgencyHeap();
         this.keywordForest = new Forest();
         this.initializeForest();
-        this.keywordHash = new HashMap<>();
+        this.clock = PiazzaClock.systemClock();
+        this.keyedDay = this.clock.today();
+        this.postHistogram = new PostHistogram(this.clock);
+        this.postCountTree = new PostCountTree(this.clock.today());
+        this.endorsementLeaderboard = new EndorsementLeaderboard();
+        this.logIndex = new LogIndex();
+        this.textIndex = new TextIndex();
+        this.tombstones = new ArrayDeque<>();
+        this.postLog = new VersionedLog<>();
     }
 
     public Forest getKeywordForest() {
@@ -72,64 +146,117 @@ public class PiazzaExchange {
      * @return two posts that has the highest endorsed
      */
     public Post[] computeTopTwoEndorsedPosts() {
-        Post[] top2Endorsed = new Post[2];
-        if (this.posts.size() == 0){
-            top2Endorsed[0] = null;
-            top2Endorsed[1] = null;
-        }
-        else if (this.posts.size() == 1){
-            top2Endorsed[0] = posts.get(0);
-            top2Endorsed[1] = null;
+        return this.computeTopEndorsedPosts(2);
+    }
+
+    /**
+     * Query for the top n endorsed posts
+     *
+     * @param n the number of posts that we want to have
+     * @return n posts that has the highest endorsed, the most recently added first
+     *      for the same count, padded with null if there are fewer posts than n
+     */
+    public Post[] computeTopEndorsedPosts(int n) {
+        this.refreshEndorsements();
+        this.lock.readLock().lock();
+        try {
+            return this.endorsementLeaderboard.top(n);
         }
-        Post num1Post = null;
-        int num1 = 0;
-        Post num2Post = null;
-        int num2 = 0;
-        for (Post post : posts){
-            int curCount = post.endorsementCount;
-            if (curCount >= num1){
-                num2 = num1;
-                num2Post = num1Post;
-                num1Post = post;
-                num1 = curCount;
-            }
-            else if (curCount >= num2){
-                num2Post = post;
-                num2 = curCount;
-            }
+        finally {
+            this.lock.readLock().unlock();
         }
-        top2Endorsed[0] = num1Post;
-        top2Endorsed[1] = num2Post;
-        return top2Endorsed;
     }
 
     
     /* helper method for getTopStudentContributions() */
 
     public int getStudentContributions(User u) {
-        return u.numOfPostSubmitted + u.numOfPostsAnswered + u.numOfEndorsement;
+        return u.getNumOfPostSubmitted() + u.getNumOfPostsAnswered() + u.getNumOfEndorsement();
     }
 
     /**
-     * get recent-30 day stats(including today), where index i corresponds to ith day away from current day
+     * Query for the k students with the highest contributions
      *
-     * @return integer array with the daily post status
+     * @param k the number of students that we want to have
+     * @return the top students, highest contribution first
      */
-    public int[] computeDailyPostStats() {
-        int[] last30DaysArr = new int[30];
-        int numOfPostsPerDay;
-        LocalDate curDate = LocalDate.now();
-        for (int i = 0; i < 30; i++) {
-            numOfPostsPerDay = 0;
-            for (int j = 0; j < this.posts.size(); j++) {
-                LocalDate thisPostDate = this.posts.get(j).getDate();
-                if (ChronoUnit.DAYS.between(thisPostDate, curDate) == i){
-                    numOfPostsPerDay++;
-                }
+    public User[] getTopStudentContributions(int k) {
+        this.lock.readLock().lock();
+        try {
+            return this.contributionRanking.top(k);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Query for the rank of a student by contributions
+     *
+     * @param u the student
+     * @return the rank of the student, 1 being the highest, or 0 if u is not a student of this course
+     */
+    public int getStudentContributionRank(User u) {
+        this.lock.readLock().lock();
+        try {
+            return this.contributionRanking.rank(u);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Query for the students whose rank by contributions is between a and b
+     *
+     * @param a the first rank, included
+     * @param b the last rank, included
+     * @return the students in rank order
+     */
+    public User[] getStudentsByContributionRank(int a, int b) {
+        this.lock.readLock().lock();
+        try {
+            return this.contributionRanking.between(a, b);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Let this piazza know that the contributions of one of its users changed
+     *
+     * @param u the user whose post, answer or endorsement count changed
+     */
+    void contributionChanged(User u) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.users.contains(u)) {
+                this.rankContributions(u);
             }
-            last30DaysArr[i] = numOfPostsPerDay;
         }
-        return last30DaysArr;
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the user to the contribution ranking, or update it, if it is a student
+     */
+    private void rankContributions(User u) {
+        if (u instanceof Student) {
+            this.contributionRanking.add(u, this.getStudentContributions(u));
+        }
+    }
+
+    /**
+     * get recent-30 day stats(including today), where index i corresponds to ith day away from current day.
+     * Reads a snapshot of the daily counts, without locking.
+     *
+     * @return integer array with the daily post status
+     */
+    public int[] computeDailyPostStats() {
+        return this.postHistogram.daily(30);
     }
 
     /**
@@ -138,20 +265,66 @@ public class PiazzaExchange {
      * @return integer array that indicates the monthly status.
      */
     public int[] computeMonthlyPostStats(){
-        int[] monthlyPostsArr = new int[12];
-        int numOfPostsPerMonths;
-        LocalDate curDate = LocalDate.now();
-        for (int i = 0; i < 12; i++){
-            numOfPostsPerMonths = 0;
-            for (int j = 0; j < this.posts.size(); j++){
-                LocalDate thisPostDate = this.posts.get(j).getDate();
-                if (ChronoUnit.MONTHS.between(thisPostDate, curDate) == i){
-                    numOfPostsPerMonths++;
-                }
+        this.lock.readLock().lock();
+        try {
+            return this.postHistogram.monthly();
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Count the posts made between two dates
+     *
+     * @param from the first date of the range, included
+     * @param to the last date of the range, included
+     * @return the number of posts made in the range
+     * @throws OperationDeniedException when to is before from
+     */
+    public int computeRangePostCount(LocalDate from, LocalDate to) throws OperationDeniedException{
+        if (to.isBefore(from)){
+            throw new OperationDeniedException();
+        }
+        this.lock.readLock().lock();
+        try {
+            return this.postCountTree.count(from.toEpochDay(), to.toEpochDay());
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Count the posts made in consecutive periods of the same length between two
+     * dates, for example weeks (periodDays = 7) or quarters of a year (periodDays = 91).
+     * The last period stops at the last date, so it may be shorter.
+     *
+     * @param from the first date of the first period
+     * @param to the last date of the last period
+     * @param periodDays the number of days in each period
+     * @return integer array where index i is the number of posts in the ith period
+     * @throws OperationDeniedException when to is before from, periodDays is not
+     *      positive, or there are too many periods for an array
+     */
+    public int[] computeRangePostStats(LocalDate from, LocalDate to, int periodDays) throws OperationDeniedException{
+        long start = from.toEpochDay();
+        long end = to.toEpochDay();
+        if (end < start || periodDays <= 0 || (end - start) / periodDays >= Integer.MAX_VALUE){
+            throw new OperationDeniedException();
+        }
+        this.lock.readLock().lock();
+        try {
+            int[] periodStats = new int[(int) ((end - start) / periodDays) + 1];
+            for (int i = 0; i < periodStats.length; i++){
+                periodStats[i] = this.postCountTree.count(start, Math.min(start + periodDays - 1, end));
+                start += periodDays;
             }
-            monthlyPostsArr[i] = numOfPostsPerMonths;
+            return periodStats;
+        }
+        finally {
+            this.lock.readLock().unlock();
         }
-        return monthlyPostsArr;
     }
 
     /**
@@ -161,11 +334,17 @@ public class PiazzaExchange {
      * @return successfulness of the action call
      */
     public boolean activatePiazza(User u){
-        if (u instanceof Instructor && this.status.equals("inactive")) { // TODO: equals or == ?
-            this.status = "active";
-            return true;
+        this.lock.writeLock().lock();
+        try {
+            if (u instanceof Instructor && this.status.equals("inactive")) { // TODO: equals or == ?
+                this.status = "active";
+                return true;
+            }
+            return false;
+        }
+        finally {
+            this.lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -175,39 +354,49 @@ public class PiazzaExchange {
      * @return successfulness of the action call
      */
     public boolean deactivatePiazza(User u){
-        if (u instanceof Instructor && this.status.equals("active")) {
-            this.status = "inactive";
-            this.selfEnroll = false;
-            return true;
+        this.lock.writeLock().lock();
+        try {
+            if (u instanceof Instructor && this.status.equals("active")) {
+                this.status = "inactive";
+                this.selfEnroll = false;
+                return true;
+            }
+            return false;
+        }
+        finally {
+            this.lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
      * Enroll the user to this PiazzaExchange. If the self enroll is disabled, only
-     * instructor and tutor can request a new enrollment action.
+     * instructor and tutor can request a new enrollment action. A user whose PID
+     * is already taken by another enrolled user (every Instructor has the same
+     * PID) is not enrolled.
      *
      * @param requester the requester of enrollment
      * @param u the user to enroll
      * @return successfulness of the action call
      */
     public boolean enrollUserToDatabase(User requester, User u){
-        if (this.status.equals("active") && !this.users.contains(u)){
-            if (this.selfEnroll){
-                this.users.add(u);
-                u.courses.add(this);
-                return true;
-            }
-            else if (requester instanceof Instructor || requester instanceof Tutor){
-                this.users.add(u);
-                u.courses.add(this);
-                return true;
+        this.lock.writeLock().lock();
+        try {
+            if (!this.status.equals("active") || this.users.contains(u)){
+                return false;
             }
-            else {
+            if (!this.selfEnroll && !(requester instanceof Instructor || requester instanceof Tutor)){
                 return false;
             }
+            if (!this.users.add(u)){
+                return false; // PID collision with another enrolled user
+            }
+            u.courses.add(this);
+            this.rankContributions(u);
+            return true;
+        }
+        finally {
+            this.lock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -220,36 +409,130 @@ public class PiazzaExchange {
         return this.enrollUserToDatabase(u, u);
     }
 
+    /**
+     * Enroll every user in the list to this PiazzaExchange, following the same
+     * rules as enrolling them one by one.
+     *
+     * @param requester the requester of enrollment
+     * @param toEnroll the users to enroll
+     * @return the number of users that got enrolled
+     */
+    public int enrollUsersToDatabase(User requester, Collection<User> toEnroll){
+        this.lock.writeLock().lock();
+        try {
+            int enrolled = 0;
+            for (User u : toEnroll){
+                if (this.enrollUserToDatabase(requester, u)){
+                    enrolled++;
+                }
+            }
+            return enrolled;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unenroll the user from this PiazzaExchange. Only instructor and tutor can
+     * unenroll other users, anyone can unenroll themselves.
+     *
+     * @param requester the requester of unenrollment
+     * @param u the user to unenroll
+     * @return successfulness of the action call
+     */
+    public boolean unenrollUserFromDatabase(User requester, User u){
+        this.lock.writeLock().lock();
+        try {
+            if (requester != u && !(requester instanceof Instructor || requester instanceof Tutor)){
+                return false;
+            }
+            if (this.users.remove(u)){
+                u.courses.remove(this);
+                this.contributionRanking.remove(u);
+                return true;
+            }
+            return false;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unenroll every user in the list from this PiazzaExchange
+     *
+     * @param requester the requester of unenrollment
+     * @param toUnenroll the users to unenroll
+     * @return the number of users that got unenrolled
+     */
+    public int unenrollUsersFromDatabase(User requester, Collection<User> toUnenroll){
+        this.lock.writeLock().lock();
+        try {
+            int unenrolled = 0;
+            for (User u : toUnenroll){
+                if (this.unenrollUserFromDatabase(requester, u)){
+                    unenrolled++;
+                }
+            }
+            return unenrolled;
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
     ////////////// BEGIN BENCHMARKED METHOD /////////////
 
     /**
-     * Given a specific posts, add this post to the database
+     * Given a specific posts, add this post to the database. Adding a post
+     * that is already in the database does nothing.
      *
      * @param u The user that initiate this add-post action
      * @param p the post that we are going to add to the database
-     * @throws OperationDeniedException when the action is not allowed
+     * @throws OperationDeniedException when the action is not allowed, when
+     *      another post with the same UID is already in the database, or when
+     *      the post belongs to another piazza
      */
     public void addPostToDatabase(User u, Post p) throws OperationDeniedException {
-        if (!this.users.contains(u) || this.status.equals("inactive")){
-            throw new OperationDeniedException();
-        }
-        this.posts.add(p);
-        if (this.keywordHash.containsKey(p.getKeyword())){
-            ArrayList<Post> posts = this.keywordHash.remove(p.getKeyword());
-            posts.add(p);
-            this.keywordHash.put(p.getKeyword(), posts);
-        }
-        else {
-            ArrayList<Post> postArr = new ArrayList<>();
-            postArr.add(p);
-            this.keywordHash.put(p.getKeyword(), postArr);
+        this.lock.writeLock().lock();
+        try {
+            if (!this.users.contains(u) || this.status.equals("inactive")){
+                throw new OperationDeniedException();
+            }
+            if (p.tombstoned && p.piazza == this){
+                this.compactTombstones(this.tombstones.size()); // deleted and added back before it was compacted
+            }
+            Post stored = this.posts.get(p.UID);
+            if (stored == p){
+                return;
+            }
+            if (stored != null){
+                throw new OperationDeniedException(); // would be a second post under the same UID
+            }
+            if (!p.claim(this)){
+                throw new OperationDeniedException(); // its tombstone, holders and updates belong to the other piazza
+            }
+            this.posts.add(p);
+            this.postHistogram.add(p.epochDay);
+            this.postCountTree.add(p.epochDay);
+            this.endorsementLeaderboard.add(p);
+            this.logIndex.add(p);
+            this.textIndex.add(p);
+            this.postLog.add(p);
+            u.addToPosts(p);
+            u.numOfPostSubmitted.increment();
+            this.keywordForest.insert(p);
+            if (p instanceof Question) {
+                this.rollOverPriorities();
+                p.setClock(this.clock);
+                this.unanswered.add(p);
+            }
         }
-        u.posts.add(p);
-        u.numOfPostSubmitted++;
-        this.keywordForest.insert(p);
-        if (p instanceof Question) {
-            this.unanswered.add(p);
+        finally {
+            this.lock.writeLock().unlock();
         }
+        u.notifyContributionChanged(); // locks every course of u, so only once this lock is released
     }
 
     /**
@@ -260,31 +543,86 @@ public class PiazzaExchange {
      * @return the post array that contains every single post that has the keyword
      */
     public Post[] retrievePost(User u, String keyword){
-        ArrayList<Post> userPostsArr = new ArrayList<>();;
-        for (Post post: u.posts){
-            if (post.getKeyword().equals(keyword)){ //TODO: equals or == ?
-                userPostsArr.add(post);
-            }
+        this.lock.readLock().lock();
+        try {
+            return this.withoutTombstones(u.getPostsWithKeyword(keyword)).toArray(new Post[0]);
         }
-        Post[] thisUserPosts = new Post[userPostsArr.size()];
-        for (int i = 0; i < thisUserPosts.length; i++){
-            thisUserPosts[i] = userPostsArr.get(i);
+        finally {
+            this.lock.readLock().unlock();
         }
-        return thisUserPosts;
     }
 
     /**
-     * Get the post that has the specific keyword
+     * Get the post that has the specific keyword. Keywords are not case
+     * sensitive.
      *
      * @param keyword the keyword that we are searching on
      * @return the post array that contains every single post that has the keyword
      */
     public Post[] retrievePost(String keyword){
-        if (!this.keywordHash.containsKey(keyword)){
-            return null;
+        return this.retrievePost(keyword, false);
+    }
+
+    /**
+     * Get the post that has the specific keyword. Keywords are not case
+     * sensitive. If fuzzy is set, a keyword that is not in this piazza falls
+     * back to the closest keyword within the typo distance, so the posts may
+     * be those of another keyword.
+     *
+     * @param keyword the keyword that we are searching on
+     * @param fuzzy whether a misspelled keyword falls back to the closest keyword
+     * @return the post array that contains every single post that has the keyword
+     */
+    public Post[] retrievePost(String keyword, boolean fuzzy){
+        this.lock.readLock().lock();
+        try {
+            List<Post> keywordPosts = this.viewPosts(keyword, fuzzy);
+            if (keywordPosts.isEmpty()){
+                return null;
+            }
+            return keywordPosts.toArray(new Post[0]);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a read-only copy of the posts that have the specific keyword, taken
+     * under the read lock so it can be read while other threads write.
+     *
+     * @param keyword the keyword that we are searching on
+     * @return the posts with the keyword, empty if there is none
+     */
+    public List<Post> viewPosts(String keyword){
+        return this.viewPosts(keyword, false);
+    }
+
+    /**
+     * Get a read-only copy of the posts that have the keyword, or if fuzzy is
+     * set and the keyword is not here, of the closest keyword
+     */
+    private List<Post> viewPosts(String keyword, boolean fuzzy){
+        this.lock.readLock().lock();
+        try {
+            Forest.InternalNode node;
+            if (keyword == null){
+                node = null;
+            }
+            else if (fuzzy){
+                node = this.keywordForest.fuzzyLookUp(keyword, typoDistance(keyword));
+            }
+            else {
+                node = this.keywordForest.nodeLookUp(keyword);
+            }
+            if (node == null){
+                return Collections.emptyList();
+            }
+            return this.withoutTombstones(node.getPosts());
+        }
+        finally {
+            this.lock.readLock().unlock();
         }
-        ArrayList<Post> keywordPosts = this.keywordHash.get(keyword);
-        return keywordPosts.toArray(new Post[0]);
     }
 
     /**
@@ -294,33 +632,165 @@ public class PiazzaExchange {
      * @return the post array that contains every single post that has specified poster u
      */
     public Post[] retrievePost(User u) {
-        ArrayList<Post> userPostsArr = u.posts;
-        Post[] thisUserPosts = new Post[userPostsArr.size()];
-        for (int i = 0; i < thisUserPosts.length; i++){
-            thisUserPosts[i] = userPostsArr.get(i);
+        this.lock.readLock().lock();
+        try {
+            return this.viewPosts(u).toArray(new Post[0]);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a read-only copy of the posts of a specific poster. The posts of a
+     * user change with every course they are in, so they are copied under the
+     * user's own lock.
+     *
+     * @param u the poster of posts
+     * @return the posts created or answered by u
+     */
+    public List<Post> viewPosts(User u) {
+        this.lock.readLock().lock();
+        try {
+            return this.withoutTombstones(u.getPosts());
+        }
+        finally {
+            this.lock.readLock().unlock();
         }
-        return thisUserPosts;
+    }
+
+    /**
+     * Copy the posts, leaving out the tombstoned ones
+     */
+    private List<Post> withoutTombstones(Collection<Post> posts) {
+        ArrayList<Post> live = new ArrayList<>(posts.size());
+        for (Post p : posts) {
+            if (!p.tombstoned) {
+                live.add(p);
+            }
+        }
+        return Collections.unmodifiableList(live);
     }
 
     /**
      * delete the post from the PE. User should be Instructor
      * return whether the post got successfully deleted or not
      *
+     * The post is only marked with a tombstone, which every read skips, and
+     * its day is taken out of the post stats. The post is removed from the
+     * other indexes later, in batches, by a background thread (see compactTombstones)
+     * that starts right away once a batch is waiting, or after COMPACTION_DELAY
+     * otherwise, so the reads stop filtering soon after a single delete.
+     *
      * @param u the user who initiate this action
      * @param p the post to delete
      * @return whether the action is successful
      * @throws OperationDeniedException when the action is denied
      */
     public boolean deletePostFromDatabase(User u, Post p) throws OperationDeniedException {
-        if (!(u instanceof Instructor)){
-            throw new OperationDeniedException();
-        }
-        if (this.posts.contains(p)){ //
-            this.posts.remove(p); // TODO: need to worry abt updating post? perhaps not @1058
-            this.unanswered.remove(p);
+        this.lock.writeLock().lock();
+        try {
+            if (!(u instanceof Instructor)){
+                throw new OperationDeniedException();
+            }
+            if (!this.posts.contains(p) || p.tombstoned){
+                return false;
+            }
+            p.tombstoned = true;
+            this.tombstones.add(p);
+            this.postLog.remove(p);
+            this.postHistogram.remove(p.epochDay);
+            this.postCountTree.remove(p.epochDay);
+            this.keywordForest.tombstone(p);
+            if (!this.compactionScheduled){
+                this.compactionScheduled = true;
+                compactor().schedule(this::compactInBackground, COMPACTION_DELAY, TimeUnit.MILLISECONDS);
+            }
+            else if (this.tombstones.size() == COMPACTION_BATCH){
+                compactor().execute(this::compactInBackground); // don't wait for the delay
+            }
             return true;
         }
-        return false;
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compact the tombstones one batch at a time, letting the queries run
+     * between the batches, until none is left
+     */
+    private void compactInBackground(){
+        boolean more = true;
+        while (more){
+            this.lock.writeLock().lock();
+            try {
+                this.compactTombstones(COMPACTION_BATCH);
+                more = !this.tombstones.isEmpty();
+                this.compactionScheduled = more;
+            }
+            finally {
+                this.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Get the background thread that compacts the tombstones, starting it on first use
+     */
+    private static synchronized ScheduledExecutorService compactor(){
+        if (compactor == null){
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "piazza-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return compactor;
+    }
+
+    /**
+     * Remove the oldest tombstoned posts from every index of this piazza and
+     * from the posts of every user that holds them, enrolled or not
+     *
+     * @param maxPosts the maximum number of posts to remove
+     * @return the number of posts removed
+     */
+    public int compactTombstones(int maxPosts){
+        this.lock.writeLock().lock();
+        try {
+            HashSet<Post> batch = new HashSet<>();
+            while (batch.size() < maxPosts && !this.tombstones.isEmpty()){
+                batch.add(this.tombstones.poll());
+            }
+            if (batch.isEmpty()){
+                return 0;
+            }
+            HashSet<User> holders = new HashSet<>();
+            for (Post p : batch){
+                this.posts.remove(p);
+                this.unanswered.remove(p);
+                this.endorsementLeaderboard.remove(p);
+                this.logIndex.remove(p);
+                this.textIndex.remove(p);
+                this.keywordForest.delete(p);
+                synchronized (p.holders) {
+                    holders.addAll(p.holders);
+                    p.holders.clear();
+                }
+            }
+            for (User user : holders){
+                user.removePosts(batch);
+            }
+            for (Post p : batch){
+                p.tombstoned = false;
+                p.piazza = null; // last, so another piazza can only take the post once it is gone from here
+            }
+            return batch.size();
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -330,19 +800,16 @@ public class PiazzaExchange {
      * @return the Post with the highest urgency rating
      */
     public Post computeMostUrgentQuestion() {
-        int mostUrgent = 0;
-        Post mostUrgentPost = null;
-        if (this.unanswered.size() == 0){
-            return null;
+        this.rollOverPriorities();
+        this.refreshEndorsements();
+        this.lock.readLock().lock();
+        try {
+            Post[] top = this.unanswered.topK(1);
+            return top.length == 0 ? null : top[0];
         }
-        for (Post post : this.unanswered){
-            int curUrgency = post.calculatePriority();
-            if (curUrgency >= mostUrgent){
-                mostUrgent = curUrgency;
-                mostUrgentPost = post;
-            }
+        finally {
+            this.lock.readLock().unlock();
         }
-        return mostUrgentPost;
     }
 
     /**
@@ -353,26 +820,19 @@ public class PiazzaExchange {
      * @throws OperationDeniedException when the operation is denied
      */
     public Post[] computeTopKUrgentQuestion(int k) throws OperationDeniedException{
-        if (k > this.unanswered.size()){
-            throw new OperationDeniedException();
-        }
-        ArrayList<Post> unansweredQuestionsCopy = new ArrayList<>(unanswered);
-        ArrayList<Post> topKUrgentQuestions = new ArrayList<>();
-        for (int i = 0; i < k; i++){
-            int PostWMostUrgencyI = 0;
-            for (int j = 1; j < unansweredQuestionsCopy.size(); j++){
-                int curUrgency = posts.get(j).calculatePriority();
-                if (curUrgency > unansweredQuestionsCopy.get(PostWMostUrgencyI).calculatePriority()){
-                    PostWMostUrgencyI = j;
-                }
+        this.rollOverPriorities();
+        this.refreshEndorsements();
+        this.lock.readLock().lock();
+        try {
+            Post[] top = this.unanswered.topK(k);
+            if (top.length < k){
+                throw new OperationDeniedException();
             }
-            topKUrgentQuestions.add(unansweredQuestionsCopy.remove(PostWMostUrgencyI));
+            return top;
         }
-        Post[] topKUrgencyQues = new Post[k];
-        for (int i = 0; i < k; i++){
-            topKUrgencyQues[i] = topKUrgentQuestions.get(i);
+        finally {
+            this.lock.readLock().unlock();
         }
-        return topKUrgencyQues;
     }
 
     /**
@@ -385,39 +845,211 @@ public class PiazzaExchange {
      * @throws OperationDeniedException when the operation is denied
      */
     public Post answerQuestion(User u, Post p, String response) throws OperationDeniedException{
-        if (!posts.contains(p)){
-            throw new OperationDeniedException();
+        this.lock.readLock().lock();
+        try {
+            if (!posts.contains(p) || p.tombstoned){
+                throw new OperationDeniedException();
+            }
+        }
+        finally {
+            this.lock.readLock().unlock();
         }
         if (p instanceof Question){
-            boolean questionAnswered = u.answerQuestion(p, response);
-            if (questionAnswered) {
-                unanswered.remove(p);
-            }
+            u.answerQuestion(p, response); // takes the locks of the courses itself, so not under this one
             return p;
         }
         return null;
     }
 
+    /**
+     * Let this piazza know that one of its questions got answered, so it is
+     * removed from the unanswered post DS
+     *
+     * @param p the question that got answered
+     */
+    void questionAnswered(Post p){
+        this.lock.writeLock().lock();
+        try {
+            if (this.posts.contains(p)){
+                this.unanswered.remove(p);
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
     ////////////// END BENCHMARKED METHOD /////////////
 
     /**
+     * Let this piazza know that the endorsement of one of its posts changed.
+     * This takes no lock: the post is only remembered, and moved to its new
+     * place in the endorsement leaderboard and the unanswered post DS by the
+     * next query that reads them, together with every other endorsed post.
+     *
+     * @param p the post that got endorsed
+     */
+    public void postEndorsed(Post p){
+        this.endorsed.add(p);
+    }
+
+    /**
+     * Move the posts endorsed since the last refresh to their new place in the
+     * endorsement leaderboard and the unanswered post DS, in one batch under
+     * the write lock. This takes the write lock, so it must not be called while
+     * holding the read lock.
+     */
+    private void refreshEndorsements(){
+        if (this.endorsed.isEmpty()){
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            Iterator<Post> iter = this.endorsed.iterator();
+            while (iter.hasNext()){
+                Post p = iter.next();
+                iter.remove(); // before reading the count, so a later endorsement adds it back
+                if (this.posts.contains(p)){
+                    this.endorsementLeaderboard.update(p);
+                    this.unanswered.update(p);
+                }
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Let this piazza know that the date of one of its posts changed, so the
+     * post stats and the unanswered post DS follow the new date.
+     *
+     * @param p the post whose date changed
+     * @param oldEpochDay the previous date of the post, as an epoch day
+     */
+    void postDateChanged(Post p, long oldEpochDay){
+        this.lock.writeLock().lock();
+        try {
+            if (p.tombstoned){
+                return; // already out of the stats, and soon out of the other indexes
+            }
+            this.postHistogram.move(oldEpochDay, p.epochDay);
+            this.postCountTree.move(oldEpochDay, p.epochDay);
+            this.logIndex.move(p);
+            this.unanswered.update(p);
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Let this piazza know that the text of one of its posts was edited, so
+     * the full-text index follows the new text.
+     *
+     * @param p the edited post
+     */
+    void postTextChanged(Post p){
+        this.lock.writeLock().lock();
+        try {
+            if (p.tombstoned){
+                return;
+            }
+            this.textIndex.add(p);
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-key the unanswered post DS if the clock moved to a new day since the
+     * priorities were last computed, as the age part of every priority may have changed.
+     * This takes the write lock, so it must not be called while holding the read lock.
+     */
+    private void rollOverPriorities(){
+        if (this.clock.today() == this.keyedDay){
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            long today = this.clock.today();
+            if (today != this.keyedDay){
+                this.unanswered.rekeyAll();
+                this.keyedDay = today;
+            }
+        }
+        finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * View the stats of the students. A student only sees their own stats,
+     * instructors and tutors see the stats of every student, one per line.
      *
-     * @param u
-     * @return
+     * @param u the user who initiate this action
+     * @return the stats
      */
     public String viewStats(User u){
-        String stats = "";
+        StringBuilder stats = new StringBuilder();
+        try {
+            this.viewStats(u, stats);
+        }
+        catch (IOException err) {
+            throw new UncheckedIOException(err); // a StringBuilder does not throw
+        }
+        return stats.toString().trim();
+    }
+
+    /**
+     * Write the stats of the students to out, one line per student
+     *
+     * @param u the user who initiate this action
+     * @param out where the stats are written
+     * @throws IOException when writing to out fails
+     */
+    public void viewStats(User u, Appendable out) throws IOException {
+        this.viewStats(u, out, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Write one page of the stats of the students to out, one line per student.
+     * The students are read from a snapshot of the roster and their counters
+     * are read once each, so no lock is held while writing to out.
+     *
+     * @param u the user who initiate this action
+     * @param out where the stats are written
+     * @param offset the number of students to skip
+     * @param limit the maximum number of students to write
+     * @throws IOException when writing to out fails
+     */
+    public void viewStats(User u, Appendable out, int offset, int limit) throws IOException {
+        Formatter formatter = new Formatter(out);
         if (u instanceof Student){
-            stats += String.format(STATS_STRING, u.username, u.numOfPostSubmitted, u.numOfPostsAnswered, u.numOfEndorsement);
+            if (offset == 0 && limit > 0){
+                formatter.format(STATS_STRING, u.username, u.getNumOfPostSubmitted(), u.getNumOfPostsAnswered(), u.getNumOfEndorsement());
+            }
         }
         else if (u instanceof Instructor || u instanceof Tutor){
-            for (User user : this.users){
-                if (user instanceof Student){
-                    stats += String.format(STATS_STRING, user.username, user.numOfPostSubmitted, user.numOfPostsAnswered, user.numOfEndorsement);
+            int index = 0;
+            for (User user : this.users.snapshot()){
+                if (!(user instanceof Student)){
+                    continue;
+                }
+                if (index - offset >= limit || formatter.ioException() != null){
+                    break;
                 }
+                if (index >= offset){
+                    formatter.format(STATS_STRING, user.username, user.getNumOfPostSubmitted(), user.getNumOfPostsAnswered(), user.getNumOfEndorsement());
+                }
+                index++;
             }
         }
-        return stats.trim();
+        formatter.flush();
+        if (formatter.ioException() != null){
+            throw formatter.ioException();
+        }
     }
 
     /**
@@ -428,36 +1060,77 @@ public class PiazzaExchange {
      *      in this piazza
      */
     public Post[] retrieveLog(User u){
-        Post[] postsArr = new Post[this.posts.size()];
-        for (int i = 0; i < postsArr.length; i++){
-            postsArr[i] = this.posts.get(i);
-        }
-        return postsArr;
+        return this.postLog.snapshot().toArray(new Post[0]);
+    }
+
+    /**
+     * Get a snapshot of all the posts from this piazza, in the order they were
+     * added. Nothing is copied and no lock is taken: the snapshot is a version
+     * of the post log, which later adds and deletes don't change.
+     *
+     * @param u the user who initiate this action
+     * @return the view of every single post in this piazza
+     */
+    public Collection<Post> viewLog(User u){
+        return this.postLog.snapshot();
     }
 
     //If the length > 10, students only be able to access the first 10 posts right?
 
     /**
-     * Retrieve posts log with specified length
+     * Retrieve posts log with specified length, the most recent post first
      *
      * @param u the user who initiate this action
      * @param length of the posts that is allowed to fetch
      * @return the posts array that satisfy the conditions
      */
     public Post[] retrieveLog(User u, int length){
-        if (u instanceof Student){
-            if (length > 10){
-                length = 10;
-            }
+        return this.retrieveLog(u, null, length).getPosts();
+    }
+
+    /**
+     * Retrieve one page of the posts log, the most recent post first. Students
+     * can only go through the 10 most recent posts.
+     *
+     * @param u the user who initiate this action
+     * @param cursor the cursor returned with the previous page, null for the first page
+     * @param pageSize the maximum number of posts in the page
+     * @return the page, with the cursor of the next page
+     * @throws IllegalArgumentException when the cursor is malformed
+     */
+    public LogPage retrieveLog(User u, String cursor, int pageSize){
+        this.lock.readLock().lock();
+        try {
+            return this.logIndex.page(cursor, pageSize, this.logLimit(u));
         }
-        if (length > this.posts.size()){
-            length = this.posts.size();
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a read-only copy of the posts log with specified length, the most
+     * recent post first. Students can see at most 10 posts.
+     *
+     * @param u the user who initiate this action
+     * @param length of the posts that is allowed to fetch
+     * @return the posts that satisfy the conditions
+     */
+    public Collection<Post> viewLog(User u, int length){
+        this.lock.readLock().lock();
+        try {
+            return this.logIndex.recent(Math.min(length, this.logLimit(u)));
         }
-        Post[] postsArr = new Post[length];
-        for (int i = 0; i < postsArr.length; i++){
-            postsArr[i] = posts.get(i);
+        finally {
+            this.lock.readLock().unlock();
         }
-        return postsArr;
+    }
+
+    /**
+     * The number of posts of the log the user is allowed to see
+     */
+    private int logLimit(User u){
+        return u instanceof Student ? 10 : Integer.MAX_VALUE;
     }
 
     private String[] getEleMultipleIndex(String[] arr, int[] indexes) {
@@ -514,34 +1187,13 @@ public class PiazzaExchange {
      * @param k the number of similar post that we are querying
      */
     public Post[] computeKSimilarPosts(String keyword, int k) {
-        keyword = keyword.toLowerCase();
-        ArrayList<Post> similarPostsArr = new ArrayList<>();
-        Queue<Forest.InternalNode> thisQueue = new LinkedList<>();
-        Queue<Forest.InternalNode> childQueue = new LinkedList<>();
-        Forest.InternalNode parentNode = this.keywordForest.nodeLookUp(keyword);
-        if (parentNode == null) {
-            return null;
-        }
-        thisQueue.add(parentNode);
-        while (!thisQueue.isEmpty() && similarPostsArr.size() < k){
-            for (Forest.InternalNode node : thisQueue){
-                childQueue.addAll(node.getChildren());
-            }
-            for (Forest.InternalNode node : thisQueue){
-                for (Post post : node.getPosts()){
-                    if (similarPostsArr.size() >= k) break;
-                    similarPostsArr.add(post);
-                }
-            }
-            thisQueue.clear();
-            thisQueue.addAll(childQueue);
-            childQueue.clear();
+        this.lock.readLock().lock();
+        try {
+            return this.keywordForest.searchPosts(this.resolveKeyword(keyword), k, Integer.MAX_VALUE);
         }
-        Post[] kSimilarPosts = new Post[k];
-        for (int i = 0; i < similarPostsArr.size(); i++){
-            kSimilarPosts[i] = similarPostsArr.get(i);
+        finally {
+            this.lock.readLock().unlock();
         }
-        return kSimilarPosts;
     }
 
     /**
@@ -549,38 +1201,109 @@ public class PiazzaExchange {
      * Forest of tree of BST and store key using HashMap.
      */
     public Post[] computeKSimilarPosts(String keyword, int k, int level) {
-        keyword = keyword.toLowerCase();
-        ArrayList<Post> similarPostsArr = new ArrayList<>();
-        Queue<Forest.InternalNode> thisQueue = new LinkedList<>();
-        Queue<Forest.InternalNode> childQueue = new LinkedList<>();
-        Forest.InternalNode parentNode = this.keywordForest.nodeLookUp(keyword);
-        if (parentNode == null) {
-            return null;
-        }
-        thisQueue.add(parentNode);
-        int numOfLevel = -1;
-        while (!thisQueue.isEmpty() && similarPostsArr.size() < k && numOfLevel < level){
-            numOfLevel++;
-            for (Forest.InternalNode node : thisQueue){
-                childQueue.addAll(node.getChildren());
-            }
-            for (Forest.InternalNode node : thisQueue){
-                for (Post post : node.getPosts()){
-                    if (similarPostsArr.size() >= k) {
-                        break;
-                    }
-                    similarPostsArr.add(post);
-                }
-            }
-            thisQueue.clear();
-            thisQueue.addAll(childQueue);
-            childQueue.clear();
+        this.lock.readLock().lock();
+        try {
+            return this.keywordForest.searchPosts(this.resolveKeyword(keyword), k, level);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the k most relevant posts around the keyword. Posts are still
+     * taken level by level, but within a level they are ranked by their
+     * endorsements, staff endorsement and recency.
+     *
+     * @param keyword The keyword that we initiate the starting point of the search
+     * @param k the number of similar post that we are querying
+     * @param level the deepest level of the forest to search
+     * @return the k posts, null if neither the keyword nor a close one is in the forest
+     */
+    public Post[] computeRankedKSimilarPosts(String keyword, int k, int level) {
+        this.lock.readLock().lock();
+        try {
+            return this.keywordForest.searchRankedPosts(this.resolveKeyword(keyword), k, level);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the k most relevant posts around the keyword, searching every level
+     *
+     * @param keyword The keyword that we initiate the starting point of the search
+     * @param k the number of similar post that we are querying
+     * @return the k posts, null if neither the keyword nor a close one is in the forest
+     */
+    public Post[] computeRankedKSimilarPosts(String keyword, int k) {
+        this.lock.readLock().lock();
+        try {
+            return this.keywordForest.searchRankedPosts(this.resolveKeyword(keyword), k, Integer.MAX_VALUE);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the key of the forest the keyword stands for: the keyword itself if
+     * it is in the forest, else the closest key within the typo distance
+     *
+     * @param keyword the keyword, possibly misspelled
+     * @return the key to search, the keyword itself if nothing is close enough
+     */
+    private String resolveKeyword(String keyword) {
+        Forest.InternalNode node = this.keywordForest.fuzzyLookUp(keyword, typoDistance(keyword));
+        return node == null ? keyword : node.getKey();
+    }
+
+    /**
+     * Number of edits allowed for a keyword: one per four characters, at most
+     * MAX_TYPO_DISTANCE, so short keywords are not matched to unrelated ones
+     */
+    private static int typoDistance(String keyword) {
+        return Math.min(MAX_TYPO_DISTANCE, keyword.length() / 4);
+    }
+
+    /**
+     * Suggest keywords of this piazza that start with what the user typed so
+     * far, the keywords with the most posts first
+     *
+     * @param prefix the beginning of the keyword
+     * @param n the number of keywords to suggest
+     * @return the suggested keywords
+     */
+    public String[] suggestKeywords(String prefix, int n) {
+        this.lock.readLock().lock();
+        try {
+            return this.keywordForest.suggestKeywords(prefix, n);
+        }
+        finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search the posts whose header or text contain the words of the query,
+     * the most relevant first (BM25). Private posts the user is not allowed to
+     * read are left out.
+     *
+     * @param u the user who searches
+     * @param query the words to search for
+     * @param matchAll true if a post must contain every word, false if any word is enough
+     * @param limit the maximum number of posts to return
+     * @return the matching posts, most relevant first
+     */
+    public Post[] searchText(User u, String query, boolean matchAll, int limit){
+        this.lock.readLock().lock();
+        try {
+            return this.textIndex.search(query, matchAll, u, limit);
         }
-        Post[] kSimilarPosts = new Post[k];
-        for (int i = 0; i < similarPostsArr.size(); i++){
-            kSimilarPosts[i] = similarPostsArr.get(i);
+        finally {
+            this.lock.readLock().unlock();
         }
-        return kSimilarPosts;
     }
 
     /**
@@ -2,8 +2,24 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -44,19 +60,129 @@ public class PiazzaExchangeTest {
     }
 
     @Test
-    public void computeTopTwoEndorsedPosts() {
+    public void computeTopTwoEndorsedPosts() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        assertArrayEquals(new Post[]{null, null}, dsc30.computeTopTwoEndorsedPosts());
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        assertArrayEquals(new Post[]{whenFinalDue, null}, dsc30.computeTopTwoEndorsedPosts());
+        dsc30.addPostToDatabase(prabina, curve);
+        dsc30.addPostToDatabase(sooh, announcement);
+        // tied posts come the most recently added first
+        assertArrayEquals(new Post[]{announcement, curve, whenFinalDue}, dsc30.computeTopEndorsedPosts(3));
+        prabina.endorsePost(curve);
+        prabina.endorsePost(announcement);
+        courtney.endorsePost(announcement);
+        assertArrayEquals(new Post[]{announcement, curve}, prabina.getTopTwoEndorsedPosts(dsc30));
+        assertArrayEquals(new Post[]{announcement, curve, whenFinalDue, null}, sooh.getTopEndorsedPosts(dsc30, 4));
+        dsc30.deletePostFromDatabase(sooh, announcement);
+        assertArrayEquals(new Post[]{curve, whenFinalDue}, dsc30.computeTopTwoEndorsedPosts());
+
+        // endorsed by a student of another course, the piazza of the post still follows
+        Student visitor = new Student("A22222", "visitor");
+        dsc20.activatePiazza(marina);
+        visitor.enrollClass(dsc20);
+        visitor.endorsePost(whenFinalDue);
+        visitor.endorsePost(whenFinalDue);
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, dsc30.computeTopTwoEndorsedPosts());
+    }
+
+    @Test
+    public void getStudentContributions() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        assertEquals(0, dsc30.getStudentContributionRank(brian));
+        assertEquals(2, dsc30.getTopStudentContributions(5).length);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        assertEquals(1, dsc30.getStudentContributions(courtney));
+        assertArrayEquals(new User[]{courtney, prabina}, dsc30.getTopStudentContributions(2));
+        dsc30.addPostToDatabase(prabina, curve);
+        prabina.answerQuestion(whenFinalDue, "soon");
+        assertEquals(1, dsc30.getStudentContributionRank(prabina));
+        assertEquals(2, dsc30.getStudentContributionRank(courtney));
+        Student larry = new Student("A11111", "larry");
+        dsc30.enrollUserToDatabase(sooh, larry);
+        assertArrayEquals(new User[]{courtney, larry}, dsc30.getStudentsByContributionRank(2, 3));
+        dsc30.unenrollUserFromDatabase(sooh, prabina);
+        assertEquals(1, dsc30.getStudentContributionRank(courtney));
     }
 
     @Test
-    public void getStudentContributions() {
+    public void computeDailyPostStats() throws OperationDeniedException {
+        PiazzaClock clock = new PiazzaClock(Clock.fixed(Instant.parse("2022-03-15T12:00:00Z"), ZoneOffset.UTC));
+        PiazzaExchange dsc40 = new PiazzaExchange(sooh, "dsc40", true, clock);
+        dsc40.activatePiazza(sooh);
+        courtney.enrollClass(dsc40);
+        whenFinalDue.setDate(LocalDate.of(2022, 3, 15));
+        curve.setDate(LocalDate.of(2022, 3, 13));
+        anyQuestions.setDate(LocalDate.of(2022, 1, 1));
+        dsc40.addPostToDatabase(courtney, whenFinalDue);
+        dsc40.addPostToDatabase(courtney, curve);
+        dsc40.addPostToDatabase(courtney, anyQuestions);
+        int[] daily = dsc40.computeDailyPostStats();
+        assertEquals(30, daily.length);
+        assertEquals(1, daily[0]);
+        assertEquals(1, daily[2]);
+        assertEquals(2, Arrays.stream(daily).sum());
+
+        curve.setDate(LocalDate.of(2022, 3, 14));
+        assertEquals(1, dsc40.computeDailyPostStats()[1]);
+        assertEquals(0, dsc40.computeDailyPostStats()[2]);
+        curve.setDate(LocalDate.of(2023, 4, 3)); // a year ahead, same slot as today
+        assertEquals(1, dsc40.computeDailyPostStats()[0]);
+        assertEquals(1, Arrays.stream(dsc40.computeDailyPostStats()).sum());
+        dsc40.deletePostFromDatabase(sooh, whenFinalDue);
+        assertEquals(0, dsc40.computeDailyPostStats()[0]);
     }
 
     @Test
-    public void computeDailyPostStats() {
+    public void computeMonthlyPostStats() throws OperationDeniedException {
+        PiazzaClock clock = new PiazzaClock(Clock.fixed(Instant.parse("2022-03-15T12:00:00Z"), ZoneOffset.UTC));
+        PiazzaExchange dsc40 = new PiazzaExchange(sooh, "dsc40", true, clock);
+        dsc40.activatePiazza(sooh);
+        courtney.enrollClass(dsc40);
+        whenFinalDue.setDate(LocalDate.of(2022, 3, 1));
+        curve.setDate(LocalDate.of(2022, 2, 14));
+        anyQuestions.setDate(LocalDate.of(2021, 3, 15));
+        dsc40.addPostToDatabase(courtney, whenFinalDue);
+        dsc40.addPostToDatabase(courtney, curve);
+        assertArrayEquals(new int[]{1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, dsc40.computeMonthlyPostStats());
+        dsc40.addPostToDatabase(courtney, anyQuestions);
+        curve.setDate(LocalDate.of(2021, 4, 1));
+        assertArrayEquals(new int[]{1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1}, dsc40.computeMonthlyPostStats());
     }
 
     @Test
-    public void computeMonthlyPostStats() {
+    public void computeRangePostCount() throws OperationDeniedException {
+        PiazzaClock clock = new PiazzaClock(Clock.fixed(Instant.parse("2022-03-15T12:00:00Z"), ZoneOffset.UTC));
+        PiazzaExchange dsc40 = new PiazzaExchange(sooh, "dsc40", true, clock);
+        dsc40.activatePiazza(sooh);
+        courtney.enrollClass(dsc40);
+        whenFinalDue.setDate(LocalDate.of(2022, 3, 1));
+        curve.setDate(LocalDate.of(2022, 3, 8));
+        anyQuestions.setDate(LocalDate.of(2015, 6, 1));
+        dsc40.addPostToDatabase(courtney, whenFinalDue);
+        dsc40.addPostToDatabase(courtney, curve);
+        dsc40.addPostToDatabase(courtney, anyQuestions);
+        assertEquals(2, dsc40.computeRangePostCount(LocalDate.of(2022, 3, 1), LocalDate.of(2022, 3, 8)));
+        assertEquals(1, dsc40.computeRangePostCount(LocalDate.of(2022, 3, 2), LocalDate.of(2022, 3, 31)));
+        assertEquals(3, dsc40.computeRangePostCount(LocalDate.of(2000, 1, 1), LocalDate.of(2030, 1, 1)));
+        assertArrayEquals(new int[]{1, 1, 0},
+                courtney.requestStats(dsc40, 4, LocalDate.of(2022, 3, 1), LocalDate.of(2022, 3, 15)));
+        assertArrayEquals(new int[]{1, 0}, // the last week stops on March 2, before the post of March 8
+                courtney.requestStats(dsc40, 4, LocalDate.of(2022, 2, 23), LocalDate.of(2022, 3, 2)));
+        curve.setDate(LocalDate.MAX); // out of the range of the tree, not counted
+        assertEquals(2, dsc40.computeRangePostCount(LocalDate.of(2000, 1, 1), LocalDate.MAX));
+        LocalDate march = LocalDate.of(2022, 3, 1);
+        assertThrows(OperationDeniedException.class, () -> dsc40.computeRangePostCount(march, march.minusDays(1)));
+        assertThrows(OperationDeniedException.class, () -> dsc40.computeRangePostStats(march, march.minusDays(20), 7));
+        assertThrows(OperationDeniedException.class, () -> dsc40.computeRangePostStats(march, march.plusDays(20), 0));
+        assertThrows(OperationDeniedException.class, () -> dsc40.computeRangePostStats(LocalDate.MIN, LocalDate.MAX, 1));
+        assertThrows(OperationDeniedException.class, () -> courtney.requestStats(dsc40, 3, march, march.minusDays(1)));
+        assertThrows(OperationDeniedException.class, () -> courtney.requestStats(dsc40, 4, march, march.minusDays(1)));
+        assertArrayEquals(new int[]{1}, dsc40.computeRangePostStats(march, march, 7));
+        curve.setDate(LocalDate.of(2022, 3, 8));
+        dsc40.deletePostFromDatabase(sooh, anyQuestions);
+        assertArrayEquals(new int[]{2},
+                courtney.requestStats(dsc40, 3, LocalDate.of(2000, 1, 1), LocalDate.of(2030, 1, 1)));
     }
 
     @Test
@@ -69,6 +195,21 @@ public class PiazzaExchangeTest {
 
     @Test
     public void enrollUserToDatabase() {
+        assertEquals(4, dsc30.users.size());
+        assertEquals(1, brian.courses.size());
+        assertFalse(dsc30.enrollUserToDatabase(sooh, scott));
+        dsc30.activatePiazza(sooh);
+        assertTrue(dsc30.enrollUserToDatabase(sooh, scott));
+        assertFalse(dsc30.enrollUserToDatabase(sooh, scott));
+        assertTrue(dsc30.users.contains(scott));
+        assertTrue(dsc30.unenrollUserFromDatabase(sooh, scott));
+        assertFalse(dsc30.users.contains(scott));
+        assertFalse(scott.courses.contains(dsc30));
+
+        assertFalse(dsc30.enrollUserToDatabase(sooh, marina)); // same PID as sooh
+        assertSame(sooh, dsc30.users.get(sooh.PID));
+        assertFalse(dsc30.users.contains(marina));
+        assertFalse(marina.courses.contains(dsc30));
     }
 
     @Test
@@ -90,16 +231,46 @@ public class PiazzaExchangeTest {
             System.out.println(pe.courseID);
         }
         System.out.println(Arrays.toString(dsc30.retrievePost(courtney)));
+
+        dsc30.addPostToDatabase(courtney, whenFinalDue); // already there, nothing happens
+        assertEquals(1, courtney.getNumOfPostSubmitted());
+        assertArrayEquals(new Post[]{whenFinalDue}, dsc30.retrievePost("final"));
+        Question sameUID = new Question(courtney, "final again", "is the final due soon?", "final", "DSC30", "04");
+        assertThrows(OperationDeniedException.class, () -> dsc30.addPostToDatabase(courtney, sameUID));
+        assertArrayEquals(new Post[]{whenFinalDue}, dsc30.retrievePost("final"));
+        assertEquals(1, courtney.getNumOfPostSubmitted());
     }
 
 
     @Test
-    public void retrievePost() {
-
+    public void retrievePost() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        assertNull(dsc30.retrievePost("final"));
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, curve);
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, dsc30.retrievePost("final"));
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, dsc30.retrievePost("FINAL"));
+        assertEquals(dsc30.getKeywordForest().getPosts("Final"), List.of(whenFinalDue, curve));
+        assertNull(dsc30.retrievePost("tree"));
     }
 
     @Test
-    public void testRetrievePost() {
+    public void testRetrievePost() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(courtney, announcement);
+        dsc30.addPostToDatabase(prabina, curve);
+        courtney.answerQuestion(curve, "no curve");
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, courtney.getPost("final", 2, dsc30));
+        assertArrayEquals(new Post[]{announcement}, dsc30.retrievePost(courtney, "remind"));
+        assertArrayEquals(new Post[0], dsc30.retrievePost(courtney, "midterm"));
+
+        // same case rules as retrievePost(keyword)
+        Note review = new Note(courtney, "review", "review session", "Final", "DSC30", "review");
+        dsc30.addPostToDatabase(courtney, review);
+        assertArrayEquals(new Post[]{whenFinalDue, curve, review}, dsc30.retrievePost(courtney, "final"));
+        assertArrayEquals(new Post[]{whenFinalDue, curve, review}, dsc30.retrievePost(courtney, "FINAL"));
+        assertEquals(3, dsc30.retrievePost("final").length);
     }
 
     @Test
@@ -107,15 +278,145 @@ public class PiazzaExchangeTest {
     }
 
     @Test
-    public void deletePostFromDatabase() {
+    public void deletePostFromDatabase() throws OperationDeniedException, InterruptedException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, curve);
+        assertTrue(dsc30.deletePostFromDatabase(sooh, whenFinalDue));
+        assertFalse(dsc30.deletePostFromDatabase(sooh, whenFinalDue));
+        assertArrayEquals(new Post[]{curve}, dsc30.retrieveLog(sooh));
+
+        // tombstoned, but still in the indexes until compacted
+        assertTrue(dsc30.getKeywordForest().getPosts("final").contains(whenFinalDue));
+        assertArrayEquals(new Post[]{curve}, dsc30.retrievePost("final"));
+        assertArrayEquals(new Post[]{curve, null}, dsc30.computeKSimilarPosts("final", 2));
+        assertArrayEquals(new Post[0], dsc30.retrievePost(courtney, "final"));
+        assertArrayEquals(new Post[]{curve}, dsc30.computeTopKUrgentQuestion(1));
+        assertArrayEquals(new Post[]{curve}, dsc30.retrieveLog(courtney, 5));
+        assertEquals(1, dsc30.computeDailyPostStats()[0]);
+        assertThrows(OperationDeniedException.class, () -> dsc30.computeTopKUrgentQuestion(2));
+        assertThrows(OperationDeniedException.class, () -> dsc30.answerQuestion(sooh, whenFinalDue, "soon"));
+
+        assertEquals(1, dsc30.compactTombstones(10));
+        assertEquals(0, dsc30.compactTombstones(10));
+        assertFalse(dsc30.getKeywordForest().getPosts("final").contains(whenFinalDue));
+        assertFalse(courtney.posts.contains(whenFinalDue));
+        assertArrayEquals(new Post[]{curve}, dsc30.retrieveLog(sooh));
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        assertArrayEquals(new Post[]{curve, whenFinalDue}, dsc30.retrieveLog(sooh));
+
+        // the poster left the course, and the compaction runs by itself after a single delete
+        assertTrue(dsc30.unenrollUserFromDatabase(courtney, courtney));
+        assertTrue(dsc30.deletePostFromDatabase(sooh, whenFinalDue));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (courtney.posts.contains(whenFinalDue) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(courtney.posts.contains(whenFinalDue));
+        assertArrayEquals(new Post[0], dsc30.retrievePost(courtney, "final"));
+        assertEquals(0, dsc30.compactTombstones(10));
+    }
+
+    @Test
+    public void addPostOfAnotherPiazza() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        dsc20.activatePiazza(marina);
+        courtney.enrollClass(dsc20);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        assertThrows(OperationDeniedException.class, () -> dsc20.addPostToDatabase(courtney, whenFinalDue));
+
+        // still tombstoned in dsc30, so it is not free to move yet
+        assertTrue(dsc30.deletePostFromDatabase(sooh, whenFinalDue));
+        assertThrows(OperationDeniedException.class, () -> dsc20.addPostToDatabase(courtney, whenFinalDue));
+        assertNull(dsc20.retrievePost("final"));
+
+        assertEquals(1, dsc30.compactTombstones(10));
+        dsc20.addPostToDatabase(courtney, whenFinalDue);
+        assertArrayEquals(new Post[]{whenFinalDue}, dsc20.retrievePost(courtney, "final"));
+        whenFinalDue.setDate(LocalDate.now().minusDays(1));
+        assertEquals(1, dsc20.computeDailyPostStats()[1]);
     }
 
     @Test
-    public void computeMostUrgentQuestion() {
+    public void computeMostUrgentQuestion() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        assertNull(dsc30.computeMostUrgentQuestion());
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, curve);
+        assertEquals(curve, dsc30.computeMostUrgentQuestion());
+        prabina.endorsePost(whenFinalDue);
+        assertEquals(whenFinalDue, dsc30.computeMostUrgentQuestion());
+        dsc30.answerQuestion(brian, whenFinalDue, "next week");
+        assertEquals(curve, dsc30.computeMostUrgentQuestion());
     }
 
     @Test
-    public void computeTopKUrgentQuestion() {
+    public void computeTopKUrgentQuestion() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, curve);
+        dsc30.addPostToDatabase(sooh, anyQuestions);
+        prabina.endorsePost(curve);
+        prabina.endorsePost(curve);
+        prabina.endorsePost(whenFinalDue);
+        assertArrayEquals(new Post[]{curve, whenFinalDue}, dsc30.computeTopKUrgentQuestion(2));
+        assertArrayEquals(new Post[]{curve, whenFinalDue, anyQuestions}, sooh.getTopKUrgentQuestion(dsc30, 3));
+        assertThrows(OperationDeniedException.class, () -> dsc30.computeTopKUrgentQuestion(4));
+    }
+
+    @Test
+    public void futurePostsCountOnceTheirDayComes() throws OperationDeniedException {
+        Instant start = Instant.parse("2022-03-01T12:00:00Z");
+        Instant[] now = {start};
+        Clock mutableClock = new Clock() {
+            public ZoneId getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(ZoneId zone) { return this; }
+            public Instant instant() { return now[0]; }
+        };
+        PiazzaClock clock = new PiazzaClock(mutableClock);
+        PiazzaExchange dsc40 = new PiazzaExchange(sooh, "dsc40", true, clock);
+        dsc40.activatePiazza(sooh);
+        courtney.enrollClass(dsc40);
+        whenFinalDue.setDate(LocalDate.of(2022, 3, 1));
+        curve.setDate(LocalDate.of(2022, 6, 1)); // too far ahead for the ring of daily counts
+        dsc40.addPostToDatabase(courtney, whenFinalDue);
+        dsc40.addPostToDatabase(courtney, curve);
+        assertEquals(1, Arrays.stream(dsc40.computeDailyPostStats()).sum());
+        assertEquals(1, Arrays.stream(dsc40.computeMonthlyPostStats()).sum());
+
+        now[0] = Instant.parse("2022-06-01T12:00:00Z");
+        assertTrue(clock.refresh());
+        assertEquals(1, dsc40.computeDailyPostStats()[0]);
+        assertArrayEquals(new int[]{1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0}, dsc40.computeMonthlyPostStats());
+        assertEquals(2, dsc40.computeRangePostCount(LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31)));
+        dsc40.deletePostFromDatabase(sooh, curve);
+        assertEquals(0, dsc40.computeDailyPostStats()[0]);
+    }
+
+    @Test
+    public void priorityRollsOverWithClock() throws OperationDeniedException {
+        Instant start = Instant.parse("2022-03-01T12:00:00Z");
+        Instant[] now = {start};
+        Clock mutableClock = new Clock() {
+            public ZoneId getZone() { return ZoneOffset.UTC; }
+            public Clock withZone(ZoneId zone) { return this; }
+            public Instant instant() { return now[0]; }
+        };
+        PiazzaClock clock = new PiazzaClock(mutableClock);
+        PiazzaExchange dsc40 = new PiazzaExchange(sooh, "dsc40", true, clock);
+        dsc40.activatePiazza(sooh);
+        courtney.enrollClass(dsc40);
+        whenFinalDue.setDate(LocalDate.of(2022, 2, 27));
+        curve.setDate(LocalDate.of(2022, 3, 1));
+        dsc40.addPostToDatabase(courtney, whenFinalDue);
+        dsc40.addPostToDatabase(courtney, curve);
+        assertEquals(0, whenFinalDue.calculatePriority());
+        assertEquals(curve, dsc40.computeMostUrgentQuestion());
+
+        now[0] = start.plus(Duration.ofDays(1));
+        assertTrue(clock.refresh());
+        assertEquals(1, whenFinalDue.calculatePriority());
+        assertEquals(whenFinalDue, dsc40.computeMostUrgentQuestion());
     }
 
     @Test
@@ -123,23 +424,297 @@ public class PiazzaExchangeTest {
     }
 
     @Test
-    public void viewStats() {
+    public void viewStats() throws OperationDeniedException, IOException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        assertEquals("prabina-p submitted 0 posts, answered 0 posts, received 0 endorsements", dsc30.viewStats(prabina));
+        assertEquals("prabina-p submitted 0 posts, answered 0 posts, received 0 endorsements\n"
+                + "courtney-c submitted 1 posts, answered 0 posts, received 0 endorsements", dsc30.viewStats(sooh));
+        StringWriter page = new StringWriter();
+        dsc30.viewStats(brian, page, 1, 5);
+        assertEquals("courtney-c submitted 1 posts, answered 0 posts, received 0 endorsements\n", page.toString());
+        StringWriter rest = new StringWriter();
+        dsc30.viewStats(brian, rest, 1, Integer.MAX_VALUE);
+        assertEquals(page.toString(), rest.toString());
+    }
+
+    @Test
+    public void retrieveLog() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        Collection<Post> log = dsc30.viewLog(sooh);
+        assertTrue(log.isEmpty());
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(courtney, announcement);
+        assertTrue(log.isEmpty()); // a snapshot, later posts don't show up in it
+        assertEquals(2, dsc30.viewLog(sooh).size());
+        assertArrayEquals(new Post[]{whenFinalDue, announcement}, dsc30.retrieveLog(sooh));
+        assertArrayEquals(new Post[]{announcement}, dsc30.viewLog(prabina, 1).toArray());
+        assertEquals(List.of(whenFinalDue, announcement), dsc30.viewPosts(courtney));
+        assertThrows(UnsupportedOperationException.class, () -> dsc30.viewLog(sooh).remove(whenFinalDue));
+
+        // the views are copies, iterating them while posting doesn't fail
+        List<Post> userPosts = dsc30.viewPosts(courtney);
+        List<Post> keywordPosts = dsc30.viewPosts("final");
+        Collection<Post> recent = dsc30.viewLog(prabina, 10);
+        for (Post p : recent) {
+            dsc30.addPostToDatabase(courtney, new Note(courtney, "note", "note", "final", "DSC30", "copy-" + p.UID));
+        }
+        for (Post p : userPosts) {
+            dsc30.addPostToDatabase(courtney, new Note(courtney, "note", "note", "final", "DSC30", "user-" + p.UID));
+        }
+        assertEquals(2, userPosts.size());
+        assertEquals(1, keywordPosts.size());
+        assertEquals(2, recent.size());
+
+        Collection<Post> beforeDelete = dsc30.viewLog(sooh);
+        dsc30.deletePostFromDatabase(sooh, whenFinalDue);
+        assertEquals(6, beforeDelete.size());
+        assertTrue(beforeDelete.contains(whenFinalDue));
+        assertFalse(dsc30.viewLog(sooh).contains(whenFinalDue));
     }
 
     @Test
-    public void retrieveLog() {
+    public void testRetrieveLog() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(courtney, announcement);
+        dsc30.addPostToDatabase(courtney, curve);
+        whenFinalDue.setDate(LocalDate.now().plusDays(1));
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, courtney.getLog(2, 2, dsc30));
+
+        LogPage page = dsc30.retrieveLog(sooh, null, 2);
+        assertArrayEquals(new Post[]{whenFinalDue, curve}, page.getPosts());
+        assertTrue(page.hasNext());
+        page = dsc30.retrieveLog(sooh, page.getNextCursor(), 2);
+        assertArrayEquals(new Post[]{announcement}, page.getPosts());
+        assertFalse(page.hasNext());
+
+        for (int i = 0; i < 12; i++) {
+            dsc30.addPostToDatabase(courtney, new Note(courtney, "note", "note", "remind", "dsc30", "note" + i));
+        }
+        page = dsc30.retrieveLog(courtney, null, 8);
+        assertEquals(8, page.getPosts().length);
+        String studentCursor = page.getNextCursor();
+        page = dsc30.retrieveLog(courtney, studentCursor, 8);
+        assertEquals(2, page.getPosts().length);
+        assertFalse(page.hasNext());
+        assertThrows(IllegalArgumentException.class, () -> dsc30.retrieveLog(courtney, studentCursor + ":0", 8));
+        String staffCursor = dsc30.retrieveLog(sooh, null, 12).getNextCursor(); // past the 10 most recent posts
+        assertEquals(0, dsc30.retrieveLog(courtney, staffCursor, 8).getPosts().length);
+        assertEquals(3, dsc30.retrieveLog(sooh, staffCursor, 8).getPosts().length);
     }
 
     @Test
-    public void testRetrieveLog() {
+    public void computeKSimilarPosts() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        Question hashTable = new Question(courtney, "hash table", "hash table?", "hash table", "DSC30", "07");
+        Question heapQ = new Question(courtney, "heap", "heap?", "heap", "DSC30", "08");
+        dsc30.addPostToDatabase(courtney, hashTable);
+        dsc30.addPostToDatabase(courtney, heapQ);
+
+        assertArrayEquals(new Post[]{hashTable, null}, dsc30.computeKSimilarPosts("hashtable", 2));
+        assertArrayEquals(new Post[]{hashTable}, dsc30.retrievePost("Hash Tabel", true));
+        assertArrayEquals(new Post[]{heapQ}, dsc30.retrievePost("heaps", true));
+        assertArrayEquals(new Post[]{heapQ}, dsc30.retrievePost("HEAP", true));
+        assertNull(dsc30.retrievePost("heaps")); // only the fuzzy lookup falls back
+        assertNull(dsc30.computeKSimilarPosts("hep", 2));
+        assertNull(dsc30.retrievePost("tree", true));
     }
 
     @Test
-    public void computeKSimilarPosts() {
+    public void testComputeKSimilarPosts() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        Question heapQ = new Question(courtney, "heap", "heap?", "heap", "DSC30", "07");
+        Question heapSort = new Question(courtney, "heap sort", "heap sort?", "heap sort", "DSC30", "08");
+        Question queue = new Question(courtney, "queue", "queue?", "queue", "DSC30", "09");
+        Question oldQueue = new Question(courtney, "old queue", "queue?", "queue", "DSC30", "10");
+        oldQueue.setDate(LocalDate.now().minusWeeks(3));
+        dsc30.addPostToDatabase(courtney, heapQ);
+        dsc30.addPostToDatabase(courtney, heapSort);
+        dsc30.addPostToDatabase(courtney, oldQueue);
+        dsc30.addPostToDatabase(courtney, queue);
+        prabina.endorsePost(heapSort);
+
+        assertArrayEquals(new Post[]{heapQ, oldQueue, queue}, dsc30.computeKSimilarPosts("heap", 3));
+        assertArrayEquals(new Post[]{heapQ, heapSort, queue}, dsc30.computeRankedKSimilarPosts("heap", 3));
+        assertArrayEquals(new Post[]{heapQ, heapSort, queue, oldQueue}, dsc30.computeRankedKSimilarPosts("heap", 4, 1));
+        assertArrayEquals(new Post[]{heapSort, null, null}, dsc30.computeRankedKSimilarPosts("heap sort", 3));
     }
 
     @Test
-    public void testComputeKSimilarPosts() {
+    public void searchText() throws OperationDeniedException {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, announcement);
+        dsc30.addPostToDatabase(courtney, curve);
+        curve.isPrivate = true;
+
+        assertEquals(2, dsc30.searchText(prabina, "Final PROJECT", true, 5).length);
+        assertEquals(2, dsc30.searchText(prabina, "deadline question", false, 5).length);
+        assertEquals(0, dsc30.searchText(prabina, "deadline question", true, 5).length);
+        assertArrayEquals(new Post[0], dsc30.searchText(prabina, "curve", false, 5));
+        assertArrayEquals(new Post[]{curve}, dsc30.searchText(brian, "curve", false, 5));
+
+        curve.editText("is the final curved?");
+        assertArrayEquals(new Post[]{curve}, dsc30.searchText(brian, "curved", false, 5));
+        assertArrayEquals(new Post[]{announcement, whenFinalDue}, dsc30.searchText(brian, "final", false, 2));
+        assertEquals(2, dsc30.searchText(prabina, "final", false, 5).length);
+
+        dsc30.deletePostFromDatabase(sooh, announcement);
+        assertArrayEquals(new Post[0], dsc30.searchText(prabina, "deadline", false, 5));
+    }
+
+    @Test
+    public void concurrentReadsAndWrites() throws Exception {
+        dsc30.activatePiazza(sooh);
+        int writers = 4;
+        int postsPerWriter = 200;
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch writing = new CountDownLatch(writers);
+        ExecutorService pool = Executors.newFixedThreadPool(2 * writers);
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            pool.execute(() -> {
+                try {
+                    for (int i = 0; i < postsPerWriter; i++) {
+                        Question q = new Question(sooh, "stress " + i, "stress test", "stress", "DSC30", writer + "-" + i);
+                        dsc30.addPostToDatabase(sooh, q);
+                        if (i % 4 == 0) {
+                            assertTrue(dsc30.deletePostFromDatabase(sooh, q));
+                        }
+                    }
+                }
+                catch (Throwable err) {
+                    errors.add(err);
+                }
+                finally {
+                    writing.countDown();
+                }
+            });
+        }
+        for (int r = 0; r < writers; r++) {
+            pool.execute(() -> {
+                // a post that is never deleted must stay visible once a read has seen it
+                HashSet<Post> seen = new HashSet<>();
+                try {
+                    while (writing.getCount() > 0) {
+                        List<Post> log = Arrays.asList(dsc30.retrieveLog(sooh));
+                        assertTrue(log.containsAll(seen));
+                        for (Post p : log) {
+                            if (Integer.parseInt(p.UID.split("-")[1]) % 4 != 0) {
+                                seen.add(p);
+                            }
+                        }
+                        Post[] keywordPosts = dsc30.retrievePost("stress");
+                        assertTrue(keywordPosts == null || Arrays.asList(keywordPosts).containsAll(seen));
+                        dsc30.computeKSimilarPosts("stress", 5);
+                        dsc30.computeTopKUrgentQuestion(0);
+                        dsc30.computeDailyPostStats();
+                        dsc30.searchText(sooh, "stress", true, 5);
+                        dsc30.viewStats(sooh);
+                    }
+                }
+                catch (Throwable err) {
+                    errors.add(err);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        int kept = writers * postsPerWriter * 3 / 4;
+        assertEquals(kept, dsc30.retrieveLog(sooh).length);
+        assertEquals(kept, dsc30.retrievePost("stress").length);
+        assertEquals(kept, Arrays.stream(dsc30.computeDailyPostStats()).sum());
+        assertEquals(kept, dsc30.computeTopKUrgentQuestion(kept).length);
+        assertEquals(kept, dsc30.searchText(sooh, "stress", true, 1000).length);
+    }
+
+    @Test
+    public void concurrentWritesInCoursesSharingUsers() throws Exception {
+        dsc30.activatePiazza(sooh);
+        dsc20.activatePiazza(marina);
+        assertTrue(prabina.enrollClass(dsc20));
+        assertTrue(courtney.enrollClass(dsc20));
+        int postsPerWriter = 100;
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Post> added = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        // every student posts in both courses at once, and answers the posts of the other one
+        for (PiazzaExchange pe : new PiazzaExchange[]{dsc30, dsc20}) {
+            for (Student poster : new Student[]{prabina, courtney}) {
+                Student answerer = poster == prabina ? courtney : prabina;
+                pool.execute(() -> {
+                    try {
+                        for (int i = 0; i < postsPerWriter; i++) {
+                            Question q = new Question(poster, "shared " + i, "shared users", "shared",
+                                    pe.courseID, pe.courseID + "-" + poster.PID + "-" + i);
+                            pe.addPostToDatabase(poster, q);
+                            pe.answerQuestion(answerer, q, "ok");
+                            added.add(q);
+                        }
+                    }
+                    catch (Throwable err) {
+                        errors.add(err);
+                    }
+                });
+            }
+        }
+        pool.shutdown();
+        assertTrue("deadlocked", pool.awaitTermination(30, TimeUnit.SECONDS));
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        // two staff endorse every post at the same time, only one of them counts
+        pool = Executors.newFixedThreadPool(2);
+        for (User staff : new User[]{sooh, brian}) {
+            pool.execute(() -> {
+                for (Post p : added) {
+                    staff.endorsePost(p);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue("deadlocked", pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        for (PiazzaExchange pe : new PiazzaExchange[]{dsc30, dsc20}) {
+            assertEquals(2 * postsPerWriter, pe.retrieveLog(sooh).length);
+            assertNull(pe.computeMostUrgentQuestion());
+            assertEquals(new HashSet<>(List.of(prabina, courtney)), new HashSet<>(List.of(pe.getTopStudentContributions(2))));
+        }
+        for (Post p : added) {
+            assertEquals(1, p.getEndorsementCount());
+        }
+        for (Student student : new Student[]{prabina, courtney}) {
+            assertEquals(2 * postsPerWriter, student.getNumOfPostSubmitted());
+            assertEquals(2 * postsPerWriter, student.getNumOfPostsAnswered());
+            assertEquals(2 * postsPerWriter, student.getNumOfEndorsement());
+            assertEquals(4 * postsPerWriter, student.posts.size());
+        }
+    }
+
+    @Test
+    public void concurrentEndorsements() throws Exception {
+        dsc30.activatePiazza(sooh);
+        dsc30.addPostToDatabase(courtney, whenFinalDue);
+        dsc30.addPostToDatabase(prabina, curve);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            Student endorser = t % 2 == 0 ? prabina : courtney;
+            pool.execute(() -> {
+                for (int i = 0; i < 250; i++) {
+                    endorser.endorsePost(curve);
+                    endorser.numOfPostSubmitted.increment();
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(2000, curve.getEndorsementCount());
+        assertEquals(1001, prabina.getNumOfPostSubmitted());
+        assertEquals(1001, dsc30.getStudentContributions(prabina));
+        assertArrayEquals(new Post[]{curve, whenFinalDue}, dsc30.computeTopTwoEndorsedPosts());
     }
 
     @Test
@@ -1,12 +1,14 @@
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class Post implements Comparable<Post> {
 
     String UID; // unique identifier for each post
     String parentPEID; // course ID that the post is created
-    int endorsementCount; // number of endorsements of the post (any type of User can contribute to this)
-    boolean endorsedByCourseStaff; // whether a course staff endorses the post (Only Tutor and Instructor can change this)
+    final LongAdder endorsementCount; // number of endorsements of the post (any type of User can contribute to this), striped so concurrent endorsements don't contend
+    final AtomicBoolean endorsedByCourseStaff; // whether a course staff endorses the post (Only Tutor and Instructor can change this), set once with compareAndSet
     private String header; // header of the post
     protected String text; // responsible for the content both Note and Question subclass
     boolean isPrivate; // whether a post is created private
@@ -14,6 +16,13 @@ public abstract class Post implements Comparable<Post> {
     LocalDate date; // date when the post is created
     int priority; // the urgency, in a decimal number, for the post to be answered by an instructor/tutor. The higher, the larger extent of priority/urgency
     private String keyword; // keyword associated with this post
+    long epochDay; // date as the number of days since 1970-01-01, kept in sync with date
+    int agePriority; // the part of the priority that comes from the age of the post
+    long agedOn; // the epoch day agePriority was computed on
+    PiazzaClock clock; // clock that tells the current day when computing the priority
+    volatile PiazzaExchange piazza; // the piazza this post was added to, null if it is not in one; set with claim
+    boolean tombstoned; // deleted from its piazza, but not yet removed from every index
+    ArrayList<User> holders; // users that have this post in their posts: the poster and the answerers
 
     /**
      * Constructor for Post
@@ -28,10 +37,12 @@ public abstract class Post implements Comparable<Post> {
         this.text = "";
         this.keyword = null;
         this.parentPEID = null;
-        this.endorsementCount = 0;
-        this.endorsedByCourseStaff = false;
+        this.endorsementCount = new LongAdder();
+        this.endorsedByCourseStaff = new AtomicBoolean(false);
         this.isPrivate = false;
-        this.date = LocalDate.now();
+        this.holders = new ArrayList<>();
+        this.clock = PiazzaClock.systemClock();
+        this.setDate(this.clock.todayDate());
         this.priority = 0;
     }
 
@@ -45,11 +56,13 @@ public abstract class Post implements Comparable<Post> {
         this.keyword = keyword;
         this.UID = UID;
         this.parentPEID = PEID;
-        this.date = LocalDate.now();
+        this.clock = PiazzaClock.systemClock();
+        this.setDate(this.clock.todayDate());
         this.priority = 0;
-        this.endorsementCount = 0;
-        this.endorsedByCourseStaff = false;
+        this.endorsementCount = new LongAdder();
+        this.endorsedByCourseStaff = new AtomicBoolean(false);
         this.isPrivate = false;
+        this.holders = new ArrayList<>();
     }
 
     /**
@@ -66,6 +79,32 @@ public abstract class Post implements Comparable<Post> {
      */
     public abstract String getText(User u) throws OperationDeniedException;
 
+    /**
+     * Whether the user is allowed to read the text of the post
+     *
+     * @param u the user
+     * @return true unless getText would deny the user
+     */
+    public boolean canBeReadBy(User u) {
+        return true;
+    }
+
+    /**
+     * Snapshot of the number of endorsements of the post
+     * @return the number of endorsements
+     */
+    public int getEndorsementCount() {
+        return this.endorsementCount.intValue();
+    }
+
+    /**
+     * Getter method of the header of the post
+     * @return the header of the post
+     */
+    public String getHeader() {
+        return this.header;
+    }
+
     public LocalDate getDate() {
         return this.date;
     }
@@ -76,7 +115,39 @@ public abstract class Post implements Comparable<Post> {
      * @param newDate the new date we are setting the post to
      */
     public void setDate(LocalDate newDate) {
+        long oldEpochDay = this.epochDay;
         this.date = newDate;
+        this.epochDay = newDate.toEpochDay();
+        this.agedOn = Long.MIN_VALUE;
+        if (this.piazza != null) {
+            this.piazza.postDateChanged(this, oldEpochDay);
+        }
+    }
+
+    /**
+     * Make the piazza the one this post belongs to, unless the post already
+     * belongs to another piazza, where it may also be waiting to be compacted
+     *
+     * @param pe the piazza the post is added to
+     * @return whether the post now belongs to the piazza
+     */
+    synchronized boolean claim(PiazzaExchange pe) {
+        if (this.piazza == null) {
+            this.piazza = pe;
+        }
+        return this.piazza == pe;
+    }
+
+    /**
+     * Set the clock used to compute the priority of the post
+     *
+     * @param clock the clock of the piazza this post belongs to
+     */
+    void setClock(PiazzaClock clock) {
+        if (this.clock != clock) {
+            this.clock = clock;
+            this.agedOn = Long.MIN_VALUE;
+        }
     }
 
     public User getPoster() {
@@ -85,6 +156,9 @@ public abstract class Post implements Comparable<Post> {
 
     public void editText(String text) {
         this.text = text;
+        if (this.piazza != null) {
+            this.piazza.postTextChanged(this);
+        }
     }
 
     public String toString() {
@@ -113,9 +187,19 @@ public abstract class Post implements Comparable<Post> {
         }
     }
 
+    /**
+     * Compute the priority of the post: its endorsements plus one for every three
+     * days since it was posted. The age part is only recomputed when the day changes.
+     *
+     * @return the priority of the post
+     */
     public int calculatePriority() {
-        int updatedPriority = this.endorsementCount+(int)(this.date.until(LocalDate.now()).getDays()/3.0);
-        this.priority = updatedPriority;
+        long today = this.clock.today();
+        if (today != this.agedOn) {
+            this.agePriority = (int) ((today - this.epochDay) / 3);
+            this.agedOn = today;
+        }
+        this.priority = this.getEndorsementCount() + this.agePriority;
         return this.priority;
     }
 
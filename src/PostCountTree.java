@@ -0,0 +1,149 @@
+/**
+ * Fenwick tree of post counts keyed by epoch day. Adding or removing a post
+ * and counting the posts made in any range of days both take O(log D), where
+ * D is the number of days covered. The covered range grows when a post falls
+ * outside of it, up to MAX_DAYS around the day the tree was made for; posts
+ * made outside of that limit are not counted.
+ */
+public class PostCountTree {
+
+    private static final int INITIAL_DAYS = 1024; // number of days covered at first
+    private static final int MAX_DAYS = 1 << 16; // largest number of days covered, about 180 years
+
+    private final long firstDay; // the first epoch day that can be counted
+    private final long lastDay; // the last epoch day that can be counted
+
+    private long base; // the epoch day stored at index 1 of the tree
+    private int[] tree; // Fenwick tree, 1-indexed, over the days base .. base + tree.length - 2
+    private int[] counts; // plain count of each day, used to rebuild the tree when it grows
+
+    /**
+     * Constructor that initialize an empty tree covering the days around the given day
+     *
+     * @param centerDay the epoch day in the middle of the covered range
+     */
+    public PostCountTree(long centerDay) {
+        this.firstDay = centerDay - MAX_DAYS / 2;
+        this.lastDay = centerDay + MAX_DAYS / 2 - 1;
+        this.base = centerDay - INITIAL_DAYS / 2;
+        this.tree = new int[INITIAL_DAYS + 1];
+        this.counts = new int[INITIAL_DAYS];
+    }
+
+    /**
+     * Count one more post on the given day. Days outside of the limit are ignored.
+     *
+     * @param epochDay the day of the post
+     */
+    public void add(long epochDay) {
+        if (epochDay < this.firstDay || epochDay > this.lastDay) {
+            return;
+        }
+        this.ensureCovered(epochDay);
+        this.update(epochDay, 1);
+    }
+
+    /**
+     * Count one less post on the given day
+     *
+     * @param epochDay the day of the post
+     */
+    public void remove(long epochDay) {
+        if (!this.covers(epochDay) || this.counts[(int) (epochDay - this.base)] == 0) {
+            return;
+        }
+        this.update(epochDay, -1);
+    }
+
+    /**
+     * Move one post from a day to another, when the date of the post changes
+     *
+     * @param oldEpochDay the previous day of the post
+     * @param newEpochDay the new day of the post
+     */
+    public void move(long oldEpochDay, long newEpochDay) {
+        this.remove(oldEpochDay);
+        this.add(newEpochDay);
+    }
+
+    /**
+     * Count the posts made between the two days, both included
+     *
+     * @param fromDay the first epoch day of the range
+     * @param toDay the last epoch day of the range
+     * @return the number of posts made in the range
+     */
+    public int count(long fromDay, long toDay) {
+        if (fromDay > toDay) {
+            return 0;
+        }
+        return this.prefix(toDay) - this.prefix(fromDay - 1);
+    }
+
+    /**
+     * Count the posts made on or before the given day
+     */
+    private int prefix(long epochDay) {
+        long index = epochDay - this.base + 1;
+        if (index <= 0) {
+            return 0;
+        }
+        int i = (int) Math.min(index, this.tree.length - 1);
+        int sum = 0;
+        while (i > 0) {
+            sum += this.tree[i];
+            i -= i & -i;
+        }
+        return sum;
+    }
+
+    private void update(long epochDay, int change) {
+        this.counts[(int) (epochDay - this.base)] += change;
+        int i = (int) (epochDay - this.base) + 1;
+        while (i < this.tree.length) {
+            this.tree[i] += change;
+            i += i & -i;
+        }
+    }
+
+    private boolean covers(long epochDay) {
+        return epochDay >= this.base && epochDay < this.base + this.counts.length;
+    }
+
+    /**
+     * Grow the covered range so that it contains the given day, doubling its
+     * size each time so that growing is amortized, and rebuild the tree in O(D).
+     * The range never grows past the limit, which contains the day.
+     */
+    private void ensureCovered(long epochDay) {
+        if (this.covers(epochDay)) {
+            return;
+        }
+        long newBase = this.base;
+        long newEnd = this.base + this.counts.length;
+        while (epochDay < newBase || epochDay >= newEnd) {
+            long length = newEnd - newBase;
+            if (epochDay < newBase) {
+                newBase -= length;
+            }
+            else {
+                newEnd += length;
+            }
+        }
+        newBase = Math.max(newBase, this.firstDay);
+        newEnd = Math.min(newEnd, this.lastDay + 1);
+        int[] newCounts = new int[(int) (newEnd - newBase)];
+        System.arraycopy(this.counts, 0, newCounts, (int) (this.base - newBase), this.counts.length);
+        int[] newTree = new int[newCounts.length + 1];
+        for (int i = 1; i < newTree.length; i++) {
+            newTree[i] += newCounts[i - 1];
+            int parent = i + (i & -i);
+            if (parent < newTree.length) {
+                newTree[parent] += newTree[i];
+            }
+        }
+        this.base = newBase;
+        this.counts = newCounts;
+        this.tree = newTree;
+    }
+}
@@ -0,0 +1,281 @@
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Counts the posts of a PiazzaExchange per day, for the daily and monthly
+ * post stats. The counts live in a ring buffer indexed by epoch day that
+ * covers a bit more than the last 12 months; a slot is reused once the day
+ * it counts falls out of that window. The monthly counts are cached for the
+ * current day and kept up to date as posts are added and removed. Days too
+ * far in the future can't go in the ring yet, as their slot still counts a
+ * day of the last 12 months: they wait in a small map and move into the ring
+ * once the clock brings them close enough.
+ *
+ * The daily counts are copy-on-write: every change publishes a new window of
+ * counts, so daily and count read a consistent snapshot without locking. The
+ * window is split in chunks of CHUNK slots and a new window shares every
+ * chunk but the ones it changes, so a change copies O(WINDOW / CHUNK + CHUNK)
+ * instead of the whole window.
+ */
+public class PostHistogram {
+
+    private static final int WINDOW = 384; // number of days kept, at least 12 months
+    private static final int MONTHS = 12; // number of months in the monthly stats
+    private static final int AHEAD = WINDOW - 367; // days after today whose slot is out of the last 12 months, later days wait in ahead
+    private static final int CHUNK = 16; // slots per chunk, WINDOW is a multiple of it
+
+    private static class Window {
+        final int[][] counts; // counts[s / CHUNK][s % CHUNK] = number of posts made on the day of slot s = d % WINDOW
+        final long[][] slotDay; // the epoch day counted in each slot, chunked the same way
+
+        Window(int[][] counts, long[][] slotDay) {
+            this.counts = counts;
+            this.slotDay = slotDay;
+        }
+
+        /**
+         * Copy the window, sharing its chunks until they are changed
+         */
+        Window copy() {
+            return new Window(this.counts.clone(), this.slotDay.clone());
+        }
+
+        /**
+         * Copy the chunk of the slot before changing it, as older windows share it
+         */
+        private void own(int chunk) {
+            this.counts[chunk] = this.counts[chunk].clone();
+            this.slotDay[chunk] = this.slotDay[chunk].clone();
+        }
+
+        /**
+         * Change the count of a day, which must not be too far after today
+         *
+         * @return whether the count changed, it does not for a day older than
+         *      the window or for removing from an empty day
+         */
+        boolean change(long epochDay, int delta) {
+            int slot = slotOf(epochDay);
+            int chunk = slot / CHUNK;
+            int i = slot % CHUNK;
+            long day = this.slotDay[chunk][i];
+            if (day != epochDay) {
+                if (delta < 0 || day > epochDay) {
+                    return false; // nothing to remove, or the day is older than the window
+                }
+            }
+            else if (this.counts[chunk][i] + delta < 0) {
+                return false;
+            }
+            this.own(chunk);
+            if (day != epochDay) {
+                this.slotDay[chunk][i] = epochDay;
+                this.counts[chunk][i] = 0;
+            }
+            this.counts[chunk][i] += delta;
+            return true;
+        }
+
+        int count(long epochDay) {
+            int slot = slotOf(epochDay);
+            return this.slotDay[slot / CHUNK][slot % CHUNK] == epochDay ? this.counts[slot / CHUNK][slot % CHUNK] : 0;
+        }
+    }
+
+    private volatile Window window; // the current counts, replaced as a whole on every change
+    private TreeMap<Long, Integer> ahead; // epoch day -> number of posts, for the days too far after today for the ring
+    private volatile long promotedDay; // the epoch day the due days of ahead were last moved into the ring
+    private PiazzaClock clock; // tells the current day
+    private int[] monthly; // monthly counts, valid for the day monthlyDay
+    private long monthlyDay; // the epoch day the monthly counts were computed on
+
+    /**
+     * Constructor that initialize an empty histogram
+     *
+     * @param clock the clock that tells the current day
+     */
+    public PostHistogram(PiazzaClock clock) {
+        int[][] counts = new int[WINDOW / CHUNK][CHUNK];
+        long[][] slotDay = new long[WINDOW / CHUNK][CHUNK];
+        for (long[] chunk : slotDay) {
+            Arrays.fill(chunk, Long.MIN_VALUE);
+        }
+        this.window = new Window(counts, slotDay);
+        this.ahead = new TreeMap<>();
+        this.promotedDay = Long.MIN_VALUE;
+        this.clock = clock;
+        this.monthly = new int[MONTHS];
+        this.monthlyDay = Long.MIN_VALUE;
+    }
+
+    /**
+     * Count one more post on the given day
+     *
+     * @param epochDay the day of the post
+     */
+    public synchronized void add(long epochDay) {
+        this.promote();
+        Window next = this.window.copy();
+        if (this.change(next, epochDay, 1)) {
+            this.window = next;
+            this.updateMonthly(epochDay, 1);
+        }
+    }
+
+    /**
+     * Count one less post on the given day
+     *
+     * @param epochDay the day of the post
+     */
+    public synchronized void remove(long epochDay) {
+        this.promote();
+        Window next = this.window.copy();
+        if (this.change(next, epochDay, -1)) {
+            this.window = next;
+            this.updateMonthly(epochDay, -1);
+        }
+    }
+
+    /**
+     * Move one post from a day to another, when the date of the post changes
+     *
+     * @param oldEpochDay the previous day of the post
+     * @param newEpochDay the new day of the post
+     */
+    public synchronized void move(long oldEpochDay, long newEpochDay) {
+        this.promote();
+        Window next = this.window.copy();
+        boolean removed = this.change(next, oldEpochDay, -1);
+        boolean added = this.change(next, newEpochDay, 1);
+        this.window = next;
+        if (removed) {
+            this.updateMonthly(oldEpochDay, -1);
+        }
+        if (added) {
+            this.updateMonthly(newEpochDay, 1);
+        }
+    }
+
+    /**
+     * Get the post counts of the last days, where index i is i days before today
+     *
+     * @param days the number of days, at most the size of the window
+     * @return the daily post counts
+     */
+    public int[] daily(int days) {
+        if (this.promotedDay != this.clock.today()) {
+            this.promote(); // only once a day, otherwise no lock is taken
+        }
+        int[] stats = new int[days];
+        long today = this.clock.today();
+        Window snapshot = this.window;
+        for (int i = 0; i < days; i++) {
+            stats[i] = snapshot.count(today - i);
+        }
+        return stats;
+    }
+
+    /**
+     * Get the post counts of the last 12 months, where index i is i months before today.
+     * Synchronized, as concurrent readers may rebuild the cached counts.
+     *
+     * @return the monthly post counts
+     */
+    public synchronized int[] monthly() {
+        this.promote();
+        if (this.monthlyDay != this.clock.today()) {
+            this.rebuildMonthly();
+        }
+        return this.monthly.clone();
+    }
+
+    /**
+     * Change the count of a day in the ring, or in ahead if the day is too far
+     * after today for the ring
+     *
+     * @return whether the count changed
+     */
+    private boolean change(Window next, long epochDay, int delta) {
+        if (epochDay <= this.clock.today() + AHEAD) {
+            return next.change(epochDay, delta);
+        }
+        int count = this.ahead.getOrDefault(epochDay, 0) + delta;
+        if (count < 0) {
+            return false;
+        }
+        if (count == 0) {
+            this.ahead.remove(epochDay);
+        }
+        else {
+            this.ahead.put(epochDay, count);
+        }
+        return true; // the monthly counts ignore days after today
+    }
+
+    /**
+     * Move the days of ahead that the clock brought close enough into the ring
+     */
+    private synchronized void promote() {
+        long today = this.clock.today();
+        if (today == this.promotedDay) {
+            return;
+        }
+        SortedMap<Long, Integer> due = this.ahead.headMap(today + AHEAD, true);
+        if (!due.isEmpty()) {
+            Window next = this.window.copy();
+            for (Map.Entry<Long, Integer> entry : due.entrySet()) {
+                if (next.change(entry.getKey(), entry.getValue())) {
+                    this.updateMonthly(entry.getKey(), entry.getValue());
+                }
+            }
+            this.window = next;
+            due.clear();
+        }
+        this.promotedDay = today;
+    }
+
+    /**
+     * Compute the monthly counts again from the daily counts of the whole window.
+     * This only happens once a day.
+     */
+    private void rebuildMonthly() {
+        long today = this.clock.today();
+        LocalDate todayDate = LocalDate.ofEpochDay(today);
+        Window snapshot = this.window;
+        this.monthly = new int[MONTHS];
+        for (int chunk = 0; chunk < WINDOW / CHUNK; chunk++) {
+            for (int i = 0; i < CHUNK; i++) {
+                long day = snapshot.slotDay[chunk][i];
+                if (snapshot.counts[chunk][i] == 0 || day > today) {
+                    continue;
+                }
+                long months = ChronoUnit.MONTHS.between(LocalDate.ofEpochDay(day), todayDate);
+                if (months < MONTHS) {
+                    this.monthly[(int) months] += snapshot.counts[chunk][i];
+                }
+            }
+        }
+        this.monthlyDay = today;
+    }
+
+    /**
+     * Apply a change of the count of a day to the cached monthly counts
+     */
+    private void updateMonthly(long epochDay, int change) {
+        if (this.monthlyDay != this.clock.today() || epochDay > this.monthlyDay) {
+            return;
+        }
+        long months = ChronoUnit.MONTHS.between(LocalDate.ofEpochDay(epochDay), LocalDate.ofEpochDay(this.monthlyDay));
+        if (months < MONTHS) {
+            this.monthly[(int) months] += change;
+        }
+    }
+
+    private static int slotOf(long epochDay) {
+        return (int) Math.floorMod(epochDay, (long) WINDOW);
+    }
+}
@@ -0,0 +1,69 @@
+import java.util.LinkedHashMap;
+
+/**
+ * Stores the posts of a PiazzaExchange keyed by their UID. The order in which
+ * the posts were added is kept, so the log can still be listed from it.
+ */
+public class PostStore {
+
+    private LinkedHashMap<String, Post> postsByUID; // UID -> post, in insertion order
+
+    /**
+     * Constructor that initialize an empty post store
+     */
+    public PostStore() {
+        this.postsByUID = new LinkedHashMap<>();
+    }
+
+    /**
+     * Add the post to the store. A post whose UID is already stored is not added again.
+     *
+     * @param p the post to add
+     * @return whether the post was added
+     */
+    public boolean add(Post p) {
+        if (this.postsByUID.containsKey(p.UID)) {
+            return false;
+        }
+        this.postsByUID.put(p.UID, p);
+        return true;
+    }
+
+    /**
+     * Check whether this exact post is in the store
+     *
+     * @param p the post to look for
+     * @return whether the post is stored
+     */
+    public boolean contains(Post p) {
+        return p != null && this.postsByUID.get(p.UID) == p;
+    }
+
+    /**
+     * Remove the post from the store
+     *
+     * @param p the post to remove
+     * @return whether the post was found and removed
+     */
+    public boolean remove(Post p) {
+        if (!this.contains(p)) {
+            return false;
+        }
+        this.postsByUID.remove(p.UID);
+        return true;
+    }
+
+    /**
+     * Get the post with the given UID
+     *
+     * @param UID the unique identifier of the post
+     * @return the post, or null if there is no post with this UID
+     */
+    public Post get(String UID) {
+        return this.postsByUID.get(UID);
+    }
+
+    public int size() {
+        return this.postsByUID.size();
+    }
+}
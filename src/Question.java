@@ -36,19 +36,22 @@ public class Question extends Post {
      * getter method for text
      */
     public String getText(User u) throws OperationDeniedException {
-        if (this.isPrivate){
-            if (u instanceof Tutor || u instanceof Instructor || this.poster == u){ // TODO: is this.poster==u is correct
-                return this.text;
-            }
-            else {
-                throw new OperationDeniedException();
-            }
+        if (this.canBeReadBy(u)){
+            return this.text;
         }
         else {
-            return this.text;
+            throw new OperationDeniedException();
         }
     }
 
+    /**
+     * Private questions can only be read by course staff and their poster
+     */
+    @Override
+    public boolean canBeReadBy(User u) {
+        return !this.isPrivate || u instanceof Tutor || u instanceof Instructor || this.poster == u; // TODO: is this.poster==u is correct
+    }
+
     /**
      * Getting the status of this question
      *
@@ -75,12 +78,12 @@ public class Question extends Post {
     }
 
     /**
-     * answer this post
+     * answer this post. Synchronized, as several users may answer at once.
      *
      * @param s the answer of this question
      * @return whether the action is successful
      */
-    public boolean answerQuestion(String s) {
+    public synchronized boolean answerQuestion(String s) {
         this.answers.add(s);
         this.answered = true;
         return true;
@@ -0,0 +1,100 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Stores the users enrolled in a PiazzaExchange keyed by their PID. Users are
+ * iterated in the order they were enrolled.
+ */
+public class Roster implements Iterable<User> {
+
+    private LinkedHashMap<String, User> usersByPID; // PID -> user, in enrollment order
+    private VersionedLog<User> log; // the same users, for reading snapshots without locking
+
+    /**
+     * Constructor that initialize an empty roster
+     */
+    public Roster() {
+        this.usersByPID = new LinkedHashMap<>();
+        this.log = new VersionedLog<>();
+    }
+
+    /**
+     * Constructor that initialize an empty roster sized for the expected number of users
+     *
+     * @param expectedSize the number of users expected to be enrolled
+     */
+    public Roster(int expectedSize) {
+        this.usersByPID = new LinkedHashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+        this.log = new VersionedLog<>();
+    }
+
+    /**
+     * Add the user to the roster. A user whose PID is already enrolled is not added again.
+     *
+     * @param u the user to add
+     * @return whether the user was added
+     */
+    public boolean add(User u) {
+        if (this.usersByPID.containsKey(u.PID)) {
+            return false;
+        }
+        this.usersByPID.put(u.PID, u);
+        this.log.add(u);
+        return true;
+    }
+
+    /**
+     * Check whether this exact user is enrolled
+     *
+     * @param u the user to look for
+     * @return whether the user is in the roster
+     */
+    public boolean contains(User u) {
+        return u != null && this.usersByPID.get(u.PID) == u;
+    }
+
+    /**
+     * Remove the user from the roster
+     *
+     * @param u the user to remove
+     * @return whether the user was found and removed
+     */
+    public boolean remove(User u) {
+        if (!this.contains(u)) {
+            return false;
+        }
+        this.usersByPID.remove(u.PID);
+        this.log.remove(u);
+        return true;
+    }
+
+    /**
+     * Get the user with the given PID
+     *
+     * @param PID the unique identifier of the user
+     * @return the user, or null if no user with this PID is enrolled
+     */
+    public User get(String PID) {
+        return this.usersByPID.get(PID);
+    }
+
+    public int size() {
+        return this.usersByPID.size();
+    }
+
+    /**
+     * Get a snapshot of the users enrolled now, in enrollment order. The
+     * snapshot never changes, so it can be read while users are enrolled.
+     *
+     * @return the users
+     */
+    public Collection<User> snapshot() {
+        return this.log.snapshot();
+    }
+
+    @Override
+    public Iterator<User> iterator() {
+        return this.usersByPID.values().iterator();
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the results of the similar post searches of a Forest,
+ * keyed by the starting node, k and the level. Every entry remembers the
+ * nodes its search visited, so when a node changes only the entries that
+ * visited it are dropped.
+ */
+public class SimilarPostsCache {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private static class Key {
+        int nodeId; // id of the node where the search starts
+        int k; // number of posts searched for
+        int level; // deepest level searched
+
+        Key(int nodeId, int k, int level) {
+            this.nodeId = nodeId;
+            this.k = k;
+            this.level = level;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.nodeId == other.nodeId && this.k == other.k && this.level == other.level;
+        }
+
+        @Override
+        public int hashCode() {
+            return (this.nodeId * 31 + this.k) * 31 + this.level;
+        }
+    }
+
+    private static class Entry {
+        Post[] posts; // the result of the search
+        int[] visited; // ids of the nodes the search visited
+
+        Entry(Post[] posts, int[] visited) {
+            this.posts = posts;
+            this.visited = visited;
+        }
+    }
+
+    private int capacity; // maximum number of entries
+    private LinkedHashMap<Key, Entry> entries; // entries, least recently used first
+    private HashMap<Integer, HashSet<Key>> dependents; // node id -> keys of the entries that visited it
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructor that initialize an empty cache with the default capacity
+     */
+    public SimilarPostsCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor that initialize an empty cache
+     *
+     * @param capacity the maximum number of results kept
+     */
+    public SimilarPostsCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.dependents = new HashMap<>();
+    }
+
+    /**
+     * Get the cached result of a search
+     *
+     * @param nodeId id of the node where the search starts
+     * @param k the number of posts searched for
+     * @param level the deepest level searched
+     * @return a copy of the cached result, or null if it is not cached
+     */
+    public Post[] get(int nodeId, int k, int level) {
+        Entry entry = this.entries.get(new Key(nodeId, k, level));
+        if (entry == null) {
+            this.misses++;
+            return null;
+        }
+        this.hits++;
+        return entry.posts.clone();
+    }
+
+    /**
+     * Cache the result of a search
+     *
+     * @param nodeId id of the node where the search starts
+     * @param k the number of posts searched for
+     * @param level the deepest level searched
+     * @param posts the result of the search, copied into the cache
+     * @param visited array whose first numVisited entries are the ids of the visited nodes
+     * @param numVisited the number of visited nodes
+     */
+    public void put(int nodeId, int k, int level, Post[] posts, int[] visited, int numVisited) {
+        if (this.capacity <= 0) {
+            return;
+        }
+        Key key = new Key(nodeId, k, level);
+        this.drop(key);
+        int[] visitedIds = new int[numVisited];
+        System.arraycopy(visited, 0, visitedIds, 0, numVisited);
+        this.entries.put(key, new Entry(posts.clone(), visitedIds));
+        for (int id : visitedIds) {
+            this.dependents.computeIfAbsent(id, i -> new HashSet<>()).add(key);
+        }
+        if (this.entries.size() > this.capacity) {
+            Iterator<Map.Entry<Key, Entry>> eldest = this.entries.entrySet().iterator();
+            Key evicted = eldest.next().getKey();
+            this.drop(evicted);
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Drop every cached result whose search visited the node
+     *
+     * @param nodeId id of the node that changed
+     */
+    public void invalidate(int nodeId) {
+        HashSet<Key> keys = this.dependents.get(nodeId);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys.toArray(new Key[0])) {
+            this.drop(key);
+            this.invalidations++;
+        }
+    }
+
+    /**
+     * Drop every cached result
+     */
+    public void clear() {
+        this.invalidations += this.entries.size();
+        this.entries.clear();
+        this.dependents.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits;
+    }
+
+    public long getMisses() {
+        return this.misses;
+    }
+
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    public long getInvalidations() {
+        return this.invalidations;
+    }
+
+    /**
+     * Remove the entry and its links from the nodes it visited
+     */
+    private void drop(Key key) {
+        Entry entry = this.entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        for (int id : entry.visited) {
+            HashSet<Key> keys = this.dependents.get(id);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    this.dependents.remove(id);
+                }
+            }
+        }
+    }
+}
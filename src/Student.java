@@ -8,18 +8,11 @@ public class Student extends User{
         boolean eligibleUser = (!p.isPrivate || p.poster == this);
         if (response.length() <= 50 && eligibleUser && p instanceof Question){
             ((Question) p).answerQuestion(response);
-            if (!this.posts.contains(p)){
-                this.posts.add(p);
-            }
-            this.numOfPostsAnswered++;
-            String userCourseID = p.parentPEID;
-            PiazzaExchange postPE;
-            for (PiazzaExchange pe : courses){
-                if (pe.courseID.equals(userCourseID)){
-                    postPE = pe;
-                    postPE.unanswered.remove(p);
-                    break;
-                }
+            this.addToPosts(p);
+            this.numOfPostsAnswered.increment();
+            this.notifyContributionChanged();
+            if (p.piazza != null){
+                p.piazza.questionAnswered(p);
             }
             return true;
         }
@@ -30,7 +23,8 @@ public class Student extends User{
     public boolean endorsePost(Post p) {
         boolean eligibleUser = (!p.isPrivate || p.poster == this);
         if (eligibleUser){
-            p.endorsementCount++;
+            p.endorsementCount.increment();
+            this.notifyEndorsed(p);
             return true;
         }
         return false;
@@ -40,8 +34,9 @@ public class Student extends User{
     public boolean editPost(Post p, String newText) {
         if (!p.isPrivate || p.poster == this){
             p.editText(newText);
-            if (!this.posts.contains(p)){
-                this.numOfPostSubmitted++;
+            if (!this.hasPost(p)){
+                this.numOfPostSubmitted.increment();
+                this.notifyContributionChanged();
             }
             return true;
         }
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Full-text inverted index over the header and text of the posts of a
+ * PiazzaExchange. Every indexed version of a post gets a compact int id, and
+ * every term maps to a posting list of (id, term frequency) pairs sorted by id.
+ * Queries combine the terms with AND or OR and rank the posts with BM25.
+ * Only the ids in the posting lists of the query terms are scored, so a query
+ * costs the length of its posting lists, not the number of indexed posts.
+ *
+ * Posting lists are only appended to. When a post is edited or removed, its
+ * old id is marked dead and skipped by queries; once dead ids outnumber live
+ * ones the posting lists are compacted.
+ */
+public class TextIndex {
+
+    private static final double K1 = 1.2; // BM25 term frequency saturation
+    private static final double B = 0.75; // BM25 length normalization
+    private static final int MIN_COMPACTION = 1024; // dead ids needed before compacting
+
+    /**
+     * Growable list of (id, term frequency) pairs
+     */
+    private static class Postings {
+        int[] data = new int[4]; // id at 2i, frequency at 2i + 1
+        int size; // number of pairs
+
+        void add(int id, int tf) {
+            if (2 * this.size == this.data.length) {
+                int[] newData = new int[this.data.length * 2];
+                System.arraycopy(this.data, 0, newData, 0, this.data.length);
+                this.data = newData;
+            }
+            this.data[2 * this.size] = id;
+            this.data[2 * this.size + 1] = tf;
+            this.size++;
+        }
+    }
+
+    private HashMap<String, Postings> postings; // term -> posting list
+    private HashMap<Post, Integer> ids; // post -> its live id
+    private ArrayList<Post> posts; // id -> post, null if the id is dead
+    private int[] lengths; // id -> number of terms of the post
+    private long totalLength; // number of terms of every live post
+    private int dead; // number of dead ids
+
+    /**
+     * Constructor that initialize an empty index
+     */
+    public TextIndex() {
+        this.postings = new HashMap<>();
+        this.ids = new HashMap<>();
+        this.posts = new ArrayList<>();
+        this.lengths = new int[16];
+        this.totalLength = 0;
+        this.dead = 0;
+    }
+
+    /**
+     * Split the text into lower-case terms made of letters and digits
+     *
+     * @param text the text
+     * @return the terms, in order
+     */
+    public static ArrayList<String> tokenize(String text) {
+        ArrayList<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            }
+            else if (!inTerm && start >= 0) {
+                terms.add(Forest.normalize(text.substring(start, i)));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Index the header and text of the post, replacing its previous version
+     *
+     * @param p the post to index
+     */
+    public void add(Post p) {
+        this.remove(p);
+        ArrayList<String> terms = tokenize(p.getHeader());
+        terms.addAll(tokenize(p.text));
+        HashMap<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+        int id = this.posts.size();
+        this.posts.add(p);
+        this.ids.put(p, id);
+        if (id == this.lengths.length) {
+            int[] newLengths = new int[this.lengths.length * 2];
+            System.arraycopy(this.lengths, 0, newLengths, 0, this.lengths.length);
+            this.lengths = newLengths;
+        }
+        this.lengths[id] = terms.size();
+        this.totalLength += terms.size();
+        for (HashMap.Entry<String, Integer> entry : frequencies.entrySet()) {
+            this.postings.computeIfAbsent(entry.getKey(), t -> new Postings()).add(id, entry.getValue());
+        }
+    }
+
+    /**
+     * Remove the post from the index
+     *
+     * @param p the post to remove
+     * @return whether the post was indexed
+     */
+    public boolean remove(Post p) {
+        Integer id = this.ids.remove(p);
+        if (id == null) {
+            return false;
+        }
+        this.posts.set(id, null);
+        this.totalLength -= this.lengths[id];
+        this.dead++;
+        if (this.dead >= MIN_COMPACTION && this.dead > this.ids.size()) {
+            this.compact();
+        }
+        return true;
+    }
+
+    /**
+     * Search the posts whose header or text contain the terms of the query,
+     * the most relevant first. Posts the user is not allowed to read are skipped.
+     *
+     * @param query the terms to search for
+     * @param matchAll true to require every term (AND), false to require any term (OR)
+     * @param u the user who searches
+     * @param limit the maximum number of posts to return
+     * @return the matching posts, most relevant first
+     */
+    public Post[] search(String query, boolean matchAll, User u, int limit) {
+        ArrayList<String> terms = new ArrayList<>();
+        for (String term : tokenize(query)) {
+            if (!terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        int live = this.ids.size();
+        if (terms.isEmpty() || live == 0 || limit <= 0) {
+            return new Post[0];
+        }
+        HashMap<Integer, Double> scores = new HashMap<>(); // id -> score, only the ids of the posting lists
+        HashMap<Integer, Integer> matched = new HashMap<>(); // id -> number of query terms it contains
+        int termIndex = 0;
+        double avgLength = Math.max(1.0, (double) this.totalLength / live);
+        for (String term : terms) {
+            Postings list = this.postings.get(term);
+            if (list == null) {
+                if (matchAll) {
+                    return new Post[0];
+                }
+                continue;
+            }
+            int df = 0;
+            for (int i = 0; i < list.size; i++) {
+                if (this.posts.get(list.data[2 * i]) != null) {
+                    df++;
+                }
+            }
+            double idf = Math.log(1 + (live - df + 0.5) / (df + 0.5));
+            for (int i = 0; i < list.size; i++) {
+                int id = list.data[2 * i];
+                if (this.posts.get(id) == null) {
+                    continue;
+                }
+                if (matchAll && termIndex > 0 && !scores.containsKey(id)) {
+                    continue; // misses an earlier term, it can't match them all
+                }
+                int tf = list.data[2 * i + 1];
+                double norm = K1 * (1 - B + B * this.lengths[id] / avgLength);
+                scores.merge(id, idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+                matched.merge(id, 1, Integer::sum);
+            }
+            termIndex++;
+        }
+        PriorityQueue<Integer> best = new PriorityQueue<>((a, b) -> Double.compare(scores.get(a), scores.get(b)));
+        for (int id : scores.keySet()) {
+            if (matchAll && matched.get(id) < terms.size()) {
+                continue;
+            }
+            if (this.posts.get(id).tombstoned || !this.posts.get(id).canBeReadBy(u)) {
+                continue;
+            }
+            best.add(id);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Post[] results = new Post[best.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = this.posts.get(best.poll());
+        }
+        return results;
+    }
+
+    public int size() {
+        return this.ids.size();
+    }
+
+    /**
+     * Give the live posts new consecutive ids and drop the dead ids from the
+     * posting lists
+     */
+    private void compact() {
+        int[] newIds = new int[this.posts.size()];
+        ArrayList<Post> newPosts = new ArrayList<>(this.ids.size());
+        int[] newLengths = new int[Math.max(16, this.ids.size())];
+        for (int id = 0; id < this.posts.size(); id++) {
+            Post p = this.posts.get(id);
+            if (p == null) {
+                newIds[id] = -1;
+                continue;
+            }
+            newIds[id] = newPosts.size();
+            newLengths[newPosts.size()] = this.lengths[id];
+            this.ids.put(p, newPosts.size());
+            newPosts.add(p);
+        }
+        HashMap<String, Postings> newPostings = new HashMap<>();
+        for (HashMap.Entry<String, Postings> entry : this.postings.entrySet()) {
+            Postings list = entry.getValue();
+            Postings compacted = new Postings();
+            for (int i = 0; i < list.size; i++) {
+                int id = newIds[list.data[2 * i]];
+                if (id >= 0) {
+                    compacted.add(id, list.data[2 * i + 1]);
+                }
+            }
+            if (compacted.size > 0) {
+                newPostings.put(entry.getKey(), compacted);
+            }
+        }
+        this.posts = newPosts;
+        this.lengths = newLengths;
+        this.postings = newPostings;
+        this.dead = 0;
+    }
+}
@@ -11,18 +11,11 @@ public class Tutor extends User{
             return false;
         }
         ((Question) p).answerQuestion(response);
-        if (!this.posts.contains(p)) {
-            this.posts.add(p);
-        } //TODO: need to add some more when doing PE
-        this.numOfPostsAnswered++; //TODO: if question is alr answered, do we still answer it?
-        String userCourseID = p.parentPEID;
-        PiazzaExchange postPE;
-        for (PiazzaExchange pe : courses){
-            if (pe.courseID.equals(userCourseID)){
-                postPE = pe;
-                postPE.unanswered.remove(p);
-                break;
-            }
+        this.addToPosts(p); //TODO: need to add some more when doing PE
+        this.numOfPostsAnswered.increment(); //TODO: if question is alr answered, do we still answer it?
+        this.notifyContributionChanged();
+        if (p.piazza != null){
+            p.piazza.questionAnswered(p);
         }
         return true;
     }
@@ -34,10 +27,11 @@ public class Tutor extends User{
 
     @Override
     public boolean endorsePost(Post p){
-        if (!p.endorsedByCourseStaff){
-            p.endorsementCount++;
-            p.poster.numOfEndorsement++;
-            p.endorsedByCourseStaff = true;
+        if (p.endorsedByCourseStaff.compareAndSet(false, true)){ // only the first staff endorsement counts
+            p.endorsementCount.increment();
+            p.poster.numOfEndorsement.increment();
+            p.poster.notifyContributionChanged();
+            this.notifyEndorsed(p);
             return true;
         }
         return false;
@@ -46,8 +40,9 @@ public class Tutor extends User{
     @Override
     public boolean editPost(Post p, String newText) {
         p.editText(newText);
-        if (!this.posts.contains(p)){
-            this.numOfPostSubmitted++;
+        if (!this.hasPost(p)){
+            this.numOfPostSubmitted.increment();
+            this.notifyContributionChanged();
         }
         return true;
     }
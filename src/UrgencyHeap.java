@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Addressable max-heap of the unanswered questions, ordered by their priority.
+ * The position of every post in the heap is indexed so that a post can be
+ * removed or have its priority updated in O(log n). When two posts have the
+ * same priority, the one added later is considered more urgent.
+ */
+public class UrgencyHeap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Post[] heap; // the posts, heap[0] is the most urgent
+    private int[] keys; // the priority of heap[i] when it was last updated
+    private long[] order; // the insertion order of heap[i], used to break ties
+    private int size; // number of posts in the heap
+    private long nextOrder; // insertion order given to the next added post
+    private HashMap<Post, Integer> positions; // post -> index in heap
+
+    /**
+     * Constructor that initialize an empty heap
+     */
+    public UrgencyHeap() {
+        this.heap = new Post[DEFAULT_CAPACITY];
+        this.keys = new int[DEFAULT_CAPACITY];
+        this.order = new long[DEFAULT_CAPACITY];
+        this.size = 0;
+        this.nextOrder = 0;
+        this.positions = new HashMap<>();
+    }
+
+    /**
+     * Add the post to the heap. If the post is already in the heap, its priority is updated instead.
+     *
+     * @param p the post to add
+     */
+    public void add(Post p) {
+        if (this.positions.containsKey(p)) {
+            this.update(p);
+            return;
+        }
+        if (this.size == this.heap.length) {
+            this.grow();
+        }
+        int i = this.size++;
+        this.heap[i] = p;
+        this.keys[i] = p.calculatePriority();
+        this.order[i] = this.nextOrder++;
+        this.positions.put(p, i);
+        this.siftUp(i);
+    }
+
+    /**
+     * Remove the post from the heap
+     *
+     * @param p the post to remove
+     * @return whether the post was found and removed
+     */
+    public boolean remove(Post p) {
+        Integer index = this.positions.remove(p);
+        if (index == null) {
+            return false;
+        }
+        int i = index;
+        int last = --this.size;
+        if (i != last) {
+            this.move(last, i);
+            this.heap[last] = null;
+            if (!this.siftUp(i)) {
+                this.siftDown(i);
+            }
+        }
+        else {
+            this.heap[last] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Recompute the priority of the post and restore its place in the heap
+     *
+     * @param p the post whose priority changed
+     * @return whether the post is in the heap
+     */
+    public boolean update(Post p) {
+        Integer index = this.positions.get(p);
+        if (index == null) {
+            return false;
+        }
+        int i = index;
+        this.keys[i] = p.calculatePriority();
+        if (!this.siftUp(i)) {
+            this.siftDown(i);
+        }
+        return true;
+    }
+
+    /**
+     * Recompute the priority of every post and rebuild the heap in O(n)
+     */
+    public void rekeyAll() {
+        for (int i = 0; i < this.size; i++) {
+            this.keys[i] = this.heap[i].calculatePriority();
+        }
+        for (int i = this.size / 2 - 1; i >= 0; i--) {
+            this.siftDown(i);
+        }
+    }
+
+    /**
+     * Get the k most urgent posts, most urgent first, without modifying the heap.
+     * Only the top of the heap is explored, so this runs in O(k log k).
+     * Tombstoned posts are skipped.
+     *
+     * @param k the number of posts to get
+     * @return the k most urgent posts, or every post if there are fewer than k
+     */
+    public Post[] topK(int k) {
+        k = Math.min(k, this.size);
+        Post[] top = new Post[k];
+        if (k == 0) {
+            return top;
+        }
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(2 * k,
+                (i, j) -> this.higher(i, j) ? -1 : (this.higher(j, i) ? 1 : 0));
+        frontier.add(0);
+        int n = 0;
+        while (n < k && !frontier.isEmpty()) {
+            int i = frontier.poll();
+            if (!this.heap[i].tombstoned) {
+                top[n++] = this.heap[i];
+            }
+            int left = 2 * i + 1;
+            if (left < this.size) {
+                frontier.add(left);
+            }
+            if (left + 1 < this.size) {
+                frontier.add(left + 1);
+            }
+        }
+        return n == k ? top : Arrays.copyOf(top, n);
+    }
+
+    public boolean contains(Post p) {
+        return this.positions.containsKey(p);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Whether the entry at index i is more urgent than the entry at index j
+     */
+    private boolean higher(int i, int j) {
+        if (this.keys[i] != this.keys[j]) {
+            return this.keys[i] > this.keys[j];
+        }
+        return this.order[i] > this.order[j];
+    }
+
+    private boolean siftUp(int i) {
+        int start = i;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!this.higher(i, parent)) {
+                break;
+            }
+            this.swap(i, parent);
+            i = parent;
+        }
+        return i != start;
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= this.size) {
+                return;
+            }
+            int child = left;
+            if (left + 1 < this.size && this.higher(left + 1, left)) {
+                child = left + 1;
+            }
+            if (!this.higher(child, i)) {
+                return;
+            }
+            this.swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Post p = this.heap[i];
+        int key = this.keys[i];
+        long ord = this.order[i];
+        this.heap[i] = this.heap[j];
+        this.keys[i] = this.keys[j];
+        this.order[i] = this.order[j];
+        this.heap[j] = p;
+        this.keys[j] = key;
+        this.order[j] = ord;
+        this.positions.put(this.heap[i], i);
+        this.positions.put(this.heap[j], j);
+    }
+
+    private void move(int from, int to) {
+        this.heap[to] = this.heap[from];
+        this.keys[to] = this.keys[from];
+        this.order[to] = this.order[from];
+        this.positions.put(this.heap[to], to);
+    }
+
+    private void grow() {
+        int capacity = this.heap.length * 2;
+        Post[] newHeap = new Post[capacity];
+        int[] newKeys = new int[capacity];
+        long[] newOrder = new long[capacity];
+        System.arraycopy(this.heap, 0, newHeap, 0, this.size);
+        System.arraycopy(this.keys, 0, newKeys, 0, this.size);
+        System.arraycopy(this.order, 0, newOrder, 0, this.size);
+        this.heap = newHeap;
+        this.keys = newKeys;
+        this.order = newOrder;
+    }
+}
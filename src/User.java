@@ -1,14 +1,22 @@
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class User {
 
     String PID; // unique identifier for each user
     String username; // username associated with the user
-    int numOfEndorsement; // number of instructor/tutor-endorsed posts created by this user
-    int numOfPostSubmitted; // number of posts created or edited by this user
-    int numOfPostsAnswered; // number of posts that this user answers to (Eg: 1 if user answers one post)
+    // Counters are striped so concurrent updates don't contend; read them with the getters
+    final LongAdder numOfEndorsement; // number of instructor/tutor-endorsed posts created by this user
+    final LongAdder numOfPostSubmitted; // number of posts created or edited by this user
+    final LongAdder numOfPostsAnswered; // number of posts that this user answers to (Eg: 1 if user answers one post)
+    // The posts are guarded by this user's monitor, as the user may post and answer in several courses at once
     ArrayList<Post> posts; // posts that the user creates and answers
-    ArrayList<PiazzaExchange> courses; // stores piazzaExchange objects that the user is enrolled in
+    HashMap<String, ArrayList<Post>> postsByKeyword; // the same posts, grouped by their normalized keyword
+    CopyOnWriteArrayList<PiazzaExchange> courses; // stores piazzaExchange objects that the user is enrolled in, copied on write so it can be iterated while enrolling
 
     /**
      * Constructor for the User abstract class
@@ -19,11 +27,12 @@ public abstract class User {
     public User(String PID, String username) {
         this.PID = PID;
         this.username = username;
-        this.numOfEndorsement = 0;
-        this.numOfPostSubmitted = 0;
-        this.numOfPostsAnswered = 0;
+        this.numOfEndorsement = new LongAdder();
+        this.numOfPostSubmitted = new LongAdder();
+        this.numOfPostsAnswered = new LongAdder();
         this.posts = new ArrayList<>();
-        this.courses = new ArrayList<>();
+        this.postsByKeyword = new HashMap<>();
+        this.courses = new CopyOnWriteArrayList<>();
     }
 
     /**
@@ -78,6 +87,26 @@ public abstract class User {
         return stats;
     }
 
+    /**
+     * Request the post status of the piazza over a date range
+     *
+     * @param option 3 for the number of posts in the range, 4 for the number of
+     *               posts in each week of the range, otherwise same as requestStats(p, option)
+     * @param from the first date of the range
+     * @param to the last date of the range
+     * @return the statistic of the piazza
+     * @throws OperationDeniedException when the option is not allowed, or to is before from
+     */
+    public int[] requestStats(PiazzaExchange p, int option, LocalDate from, LocalDate to) throws OperationDeniedException{
+        if (option == 3){
+            return new int[]{p.computeRangePostCount(from, to)};
+        }
+        else if (option == 4){
+            return p.computeRangePostStats(from, to, 7);
+        }
+        return this.requestStats(p, option);
+    }
+
     ////////////// Stats querying method BEGINS /////////////
 
     /**
@@ -126,7 +155,8 @@ public abstract class User {
      * initiate the action of getLog of a specific piazza
      * @param pe the target piazza
      * @param length the amount of logs to be retrieved
-     * @param option the query type when retrieving log 
+     * @param option the query type when retrieving log: 1 for every post, 2 for
+     *               the most recent posts, most recent first
      * @return the post array
      */
     public Post[] getLog(int length, int option, PiazzaExchange pe) throws OperationDeniedException{
@@ -140,7 +170,7 @@ public abstract class User {
         else {
             throw new OperationDeniedException();
         }
-        return logs; // TODO: verify that logs is sorted by date of the post in descending order, where the most recent post is stored at index 0
+        return logs;
     }
 
     ////////////// Stats querying method END /////////////
@@ -162,6 +192,111 @@ public abstract class User {
      */
     public abstract boolean endorsePost(Post p);
 
+    public int getNumOfEndorsement() {
+        return this.numOfEndorsement.intValue();
+    }
+
+    public int getNumOfPostSubmitted() {
+        return this.numOfPostSubmitted.intValue();
+    }
+
+    public int getNumOfPostsAnswered() {
+        return this.numOfPostsAnswered.intValue();
+    }
+
+    /**
+     * Add the post to the posts of this user and to its keyword index, if it
+     * is not there yet
+     *
+     * @param p the post this user created or answered
+     */
+    synchronized void addToPosts(Post p) {
+        if (this.hasPost(p)) {
+            return;
+        }
+        synchronized (p.holders) {
+            p.holders.add(this);
+        }
+        this.posts.add(p);
+        this.postsByKeyword.computeIfAbsent(keyOf(p.getKeyword()), k -> new ArrayList<>()).add(p);
+    }
+
+    /**
+     * Remove the posts from the posts of this user and from its keyword index
+     *
+     * @param removed the posts to remove
+     */
+    synchronized void removePosts(Set<Post> removed) {
+        if (this.posts.removeIf(removed::contains)) {
+            for (ArrayList<Post> keywordPosts : this.postsByKeyword.values()) {
+                keywordPosts.removeIf(removed::contains);
+            }
+        }
+    }
+
+    /**
+     * Check whether the post is one of the posts of this user, by only looking
+     * at the posts with the same keyword
+     *
+     * @param p the post to look for
+     * @return whether this user created or answered the post
+     */
+    synchronized boolean hasPost(Post p) {
+        ArrayList<Post> keywordPosts = this.postsByKeyword.get(keyOf(p.getKeyword()));
+        return keywordPosts != null && keywordPosts.contains(p);
+    }
+
+    /**
+     * Get a copy of the posts of this user
+     *
+     * @return the posts this user created or answered, in the order they were added
+     */
+    synchronized ArrayList<Post> getPosts() {
+        return new ArrayList<>(this.posts);
+    }
+
+    /**
+     * Get a copy of the posts of this user that have the keyword, in any case
+     *
+     * @param keyword the keyword of the posts
+     * @return the posts with the keyword, in the order they were added
+     */
+    synchronized ArrayList<Post> getPostsWithKeyword(String keyword) {
+        ArrayList<Post> keywordPosts = this.postsByKeyword.get(keyOf(keyword));
+        return keywordPosts == null ? new ArrayList<>() : new ArrayList<>(keywordPosts);
+    }
+
+    /**
+     * The key of a keyword in postsByKeyword: normalized like the keys of the
+     * Forest, so both indexes match keywords the same way
+     */
+    private static String keyOf(String keyword) {
+        return keyword == null ? null : Forest.normalize(keyword);
+    }
+
+    /**
+     * Let the piazza of the post know that the post got endorsed
+     *
+     * @param p the post that got endorsed
+     */
+    void notifyEndorsed(Post p) {
+        PiazzaExchange pe = p.piazza;
+        if (pe != null) {
+            pe.postEndorsed(p);
+        }
+    }
+
+    /**
+     * Let every course of this user know that the contributions of this user
+     * changed. This takes the lock of every course, so it must not be called
+     * while holding the lock of one of them.
+     */
+    void notifyContributionChanged() {
+        for (PiazzaExchange pe : courses) {
+            pe.contributionChanged(this);
+        }
+    }
+
     /**
      * gets top two endorsed posts (by number of endorsements)
      *
@@ -172,6 +307,17 @@ public abstract class User {
         return pe.computeTopTwoEndorsedPosts();
     }
 
+    /**
+     * gets top n endorsed posts (by number of endorsements)
+     *
+     * @param pe the target piazza
+     * @param n the amount of posts we want to get
+     * @return top n posts
+     */
+    public Post[] getTopEndorsedPosts(PiazzaExchange pe, int n){
+        return pe.computeTopEndorsedPosts(n);
+    }
+
     /**
      * Display name for the user
      *
@@ -0,0 +1,181 @@
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Multi-version log of elements in the order they were added. Every change
+ * publishes a new immutable version with one volatile write, so a reader takes
+ * a point-in-time snapshot without locking and writers never wait for readers.
+ *
+ * Elements are appended to a shared array past the end of every published
+ * version, where older snapshots don't look. A removed element is stamped with
+ * the version that removed it instead of being moved, so snapshots taken
+ * before still see it. The array is only copied when it is full or when removed
+ * elements outnumber the live ones; older snapshots keep the old array.
+ * Changes must not run concurrently with each other.
+ *
+ * @param <T> the type of the elements
+ */
+public class VersionedLog<T> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int MIN_COMPACTION = 64; // removed elements needed before compacting
+    private static final int LIVE = Integer.MAX_VALUE; // stamp of an element that is not removed
+
+    private static class Version {
+        final Object[] elements; // the shared array of elements
+        final int[] removedIn; // removedIn[i] = the version that removed element i, LIVE if none
+        final int length; // number of slots of the array this version sees
+        final int number; // number of this version, compared with the removedIn stamps
+        final int size; // number of elements this version sees
+
+        Version(Object[] elements, int[] removedIn, int length, int number, int size) {
+            this.elements = elements;
+            this.removedIn = removedIn;
+            this.length = length;
+            this.number = number;
+            this.size = size;
+        }
+    }
+
+    private volatile Version current; // the latest version
+    private HashMap<T, Integer> slots; // element -> its slot in the array, only used by writers
+    private int removed; // number of removed elements still in the array
+
+    /**
+     * Constructor that initialize an empty log
+     */
+    public VersionedLog() {
+        this.current = new Version(new Object[DEFAULT_CAPACITY], new int[DEFAULT_CAPACITY], 0, 0, 0);
+        this.slots = new HashMap<>();
+        this.removed = 0;
+    }
+
+    /**
+     * Append the element, if it is not in the log yet
+     *
+     * @param element the element to add
+     * @return whether the element was added
+     */
+    public boolean add(T element) {
+        if (this.slots.containsKey(element)) {
+            return false;
+        }
+        if (this.current.number == LIVE - 1) {
+            this.compact(); // compacting numbers the versions from 0 again
+        }
+        Version v = this.current;
+        Object[] elements = v.elements;
+        int[] removedIn = v.removedIn;
+        if (v.length == elements.length) {
+            elements = new Object[2 * v.length];
+            removedIn = new int[2 * v.length];
+            System.arraycopy(v.elements, 0, elements, 0, v.length);
+            System.arraycopy(v.removedIn, 0, removedIn, 0, v.length);
+        }
+        elements[v.length] = element;
+        removedIn[v.length] = LIVE;
+        this.slots.put(element, v.length);
+        this.current = new Version(elements, removedIn, v.length + 1, v.number + 1, v.size + 1);
+        return true;
+    }
+
+    /**
+     * Remove the element. Snapshots taken before still see it.
+     *
+     * @param element the element to remove
+     * @return whether the element was found and removed
+     */
+    public boolean remove(T element) {
+        if (!this.slots.containsKey(element)) {
+            return false;
+        }
+        if (this.current.number == LIVE - 1) {
+            this.compact();
+        }
+        int slot = this.slots.remove(element);
+        Version v = this.current;
+        v.removedIn[slot] = v.number + 1; // older versions have smaller numbers, so they still see it
+        this.removed++;
+        this.current = new Version(v.elements, v.removedIn, v.length, v.number + 1, v.size - 1);
+        if (this.removed >= MIN_COMPACTION && this.removed > this.current.size) {
+            this.compact();
+        }
+        return true;
+    }
+
+    /**
+     * Get a snapshot of the log as it is now. The snapshot never changes, and
+     * reading it takes no lock.
+     *
+     * @return the elements, in the order they were added
+     */
+    public Collection<T> snapshot() {
+        Version v = this.current;
+        return new AbstractCollection<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new Iterator<T>() {
+                    private int next = this.skipRemoved(0); // slot of the next element
+
+                    private int skipRemoved(int slot) {
+                        while (slot < v.length && v.removedIn[slot] <= v.number) {
+                            slot++;
+                        }
+                        return slot;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < v.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public T next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        T element = (T) v.elements[this.next];
+                        this.next = this.skipRemoved(this.next + 1);
+                        return element;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return v.size;
+            }
+        };
+    }
+
+    public int size() {
+        return this.current.size;
+    }
+
+    /**
+     * Copy the live elements into new arrays and number the versions from 0
+     * again. Snapshots taken before keep the old arrays.
+     */
+    @SuppressWarnings("unchecked")
+    private void compact() {
+        Version v = this.current;
+        int capacity = Math.max(DEFAULT_CAPACITY, 2 * v.size);
+        Object[] elements = new Object[capacity];
+        int[] removedIn = new int[capacity];
+        int length = 0;
+        for (int i = 0; i < v.length; i++) {
+            if (v.removedIn[i] == LIVE) {
+                elements[length] = v.elements[i];
+                removedIn[length] = LIVE;
+                this.slots.put((T) v.elements[i], length);
+                length++;
+            }
+        }
+        this.removed = 0;
+        this.current = new Version(elements, removedIn, length, 0, length);
+    }
+}